@@ -0,0 +1,88 @@
+package src.bench;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.*;
+import src.*;
+
+// Benchmark for one acquire-release cycle of a routing station on a ring of the given size, with zero-cost
+// back-off so only the locking is measured. Each benchmark thread drives its own share of the stations (thread k
+// drives stations k, k + T, k + 2T, ...) and moves to its next station on every call, so neighbouring stations are
+// driven by different threads. Run with -t no larger than the smallest station count.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(2)
+@State(Scope.Benchmark)
+public class AcquisitionLoopBenchmark {
+    @Param({"2", "5", "10", "64", "1024"})
+    public int stations;
+
+    @Param({"trylock", "ordered", "token", "arbiter", "batch"})
+    public String strategy;
+
+    @Param({"lock", "atomic"})
+    public String conveyor;
+
+    private RoutingStation[] ring;
+    private ConveyorAcquisitionStrategy acquisition;
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Driver {
+        private int station = -1;
+        private int stride;
+
+        // Method to move to the next station owned by this thread
+        int next(AcquisitionLoopBenchmark ring, int threads) {
+            if (station < 0) {
+                station = ring.nextThread.getAndIncrement();
+                stride = threads;
+                if (station >= ring.stations) {
+                    throw new IllegalStateException("More benchmark threads than stations");
+                }
+                return station;
+            }
+            station += stride;
+            if (station >= ring.stations) {
+                station %= stride;
+            }
+            return station;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConveyorObj[] conveyors = new ConveyorObj[stations];
+        for (int i = 0; i < stations; i++) {
+            conveyors[i] = ConveyorObj.create(conveyor, i);
+        }
+        SimulationStats stats = SimulationStats.forThreads(stations, 0);
+        int[] workloads = new int[stations];
+        Arrays.fill(workloads, Integer.MAX_VALUE);
+        acquisition = ConveyorAcquisitionStrategy.create(strategy, FacilityTopology.ring(WorkloadSource.of(workloads)));
+        ring = new RoutingStation[stations];
+        for (int i = 0; i < stations; i++) {
+            ring[i] = new RoutingStation(i, conveyors[i], conveyors[(i + 1) % stations], Integer.MAX_VALUE, stats, acquisition);
+            ring[i].setTiming(0, 0);
+        }
+        nextThread.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        acquisition.close();
+    }
+
+    @Benchmark
+    public void acquireRelease(Driver driver, org.openjdk.jmh.infra.ThreadParams threads) {
+        RoutingStation station = ring[driver.next(this, threads.getThreadCount())];
+        acquisition.acquire(station);
+        for (int k = 0; k < station.getConveyors().length; k++) {
+            station.unlockConveyor(k);
+        }
+        acquisition.released(station);
+    }
+}
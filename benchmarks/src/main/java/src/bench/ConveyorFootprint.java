@@ -0,0 +1,35 @@
+package src.bench;
+import src.*;
+
+// Program to compare the heap taken by a facility's worth of conveyors of each kind - allocates a million conveyors
+// per kind, some of them held once so the lock internals are initialized, and reports bytes per conveyor.
+// Run with: java -cp benchmarks/target/benchmarks.jar src.bench.ConveyorFootprint [count]
+public class ConveyorFootprint {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        for (String kind : new String[] {"lock", "atomic"}) {
+            long before = usedHeap();
+            ConveyorObj[] conveyors = new ConveyorObj[count];
+            for (int i = 0; i < count; i++) {
+                conveyors[i] = ConveyorObj.create(kind, i);
+                if (conveyors[i].lockConveyor(0)) {
+                    conveyors[i].unlockConveyor();
+                }
+            }
+            long after = usedHeap();
+            System.out.printf("%-8s %,d conveyors: %,d bytes, %.1f bytes/conveyor%n", kind, count, after - before,
+            (after - before) / (double) count);
+            if (conveyors[count - 1].getID() != count - 1) {
+                throw new IllegalStateException("conveyors were not kept alive");
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,103 @@
+package src.bench;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import org.openjdk.jmh.annotations.*;
+import src.*;
+
+// Benchmark for the conveyor lock primitives: one tryLock/unlock round trip of each conveyor kind against the plain
+// primitives they are built on. The *Contended variants run the same round trip from 4 threads on one conveyor.
+// ConveyorFootprint compares how much heap the conveyor kinds take.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConveyorLockBenchmark {
+    private final ConveyorObj conveyor = ConveyorObj.create("lock", 0);
+    private final ConveyorObj atomicConveyor = ConveyorObj.create("atomic", 0);
+    private final ReentrantLock reentrantLock = new ReentrantLock();
+    private final AtomicInteger owner = new AtomicInteger(-1);
+    private final Object monitor = new Object();
+    private int monitorCount = 0;
+
+    @Benchmark
+    public boolean lockConveyor() {
+        return conveyorRoundTrip();
+    }
+
+    @Benchmark
+    public boolean atomicConveyor() {
+        return roundTrip(atomicConveyor);
+    }
+
+    @Benchmark
+    public boolean reentrantLock() {
+        return reentrantLockRoundTrip();
+    }
+
+    @Benchmark
+    public boolean atomicOwner() {
+        return atomicOwnerRoundTrip();
+    }
+
+    @Benchmark
+    public int synchronizedBlock() {
+        synchronized (monitor) {
+            return ++monitorCount;
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean lockConveyorContended() {
+        return conveyorRoundTrip();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean atomicConveyorContended() {
+        return roundTrip(atomicConveyor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean reentrantLockContended() {
+        return reentrantLockRoundTrip();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean atomicOwnerContended() {
+        return atomicOwnerRoundTrip();
+    }
+
+    private boolean conveyorRoundTrip() {
+        return roundTrip(conveyor);
+    }
+
+    private static boolean roundTrip(ConveyorObj conveyor) {
+        if (conveyor.lockConveyor(1)) {
+            conveyor.unlockConveyor();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean reentrantLockRoundTrip() {
+        if (reentrantLock.tryLock()) {
+            reentrantLock.unlock();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean atomicOwnerRoundTrip() {
+        if (owner.compareAndSet(-1, 1)) {
+            owner.set(-1);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,57 @@
+package src.bench;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import src.*;
+
+// Benchmark for end-to-end simulation throughput with zero-cost work: every station moves 100 package groups with
+// no work or back-off sleeps and the event log off, so one operation is a whole facility run. The metrics parameter
+// measures the cost of leaving the live metrics on. The threaded run uses
+// one platform thread per station like PackageRoutingSim. VirtualClockBenchmark runs the same facility on the
+// virtual clock for comparison.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimulationThroughputBenchmark {
+    static final int GROUPS_PER_STATION = 100;
+
+    @Param({"2", "5", "10", "64", "1024"})
+    public int stations;
+
+    @Param({"trylock", "ordered", "token", "arbiter", "batch"})
+    public String strategy;
+
+    @Param({"lock", "atomic"})
+    public String conveyor;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    @Benchmark
+    public long threaded() throws InterruptedException {
+        ConveyorObj[] conveyors = new ConveyorObj[stations];
+        for (int i = 0; i < stations; i++) {
+            conveyors[i] = ConveyorObj.create(conveyor, i);
+        }
+        SimulationStats stats = SimulationStats.forThreads(stations, 0);
+        int[] workloads = new int[stations];
+        Arrays.fill(workloads, GROUPS_PER_STATION);
+        FacilityTopology topology = FacilityTopology.ring(WorkloadSource.of(workloads));
+        SimMetrics simMetrics = metrics ? new SimMetrics(topology, stats) : null;
+        ConveyorAcquisitionStrategy acquisition = ConveyorAcquisitionStrategy.create(strategy, topology);
+        ExecutorService threadController = Executors.newFixedThreadPool(stations);
+        for (int i = 0; i < stations; i++) {
+            RoutingStation station = new RoutingStation(i, conveyors[i], conveyors[(i + 1) % stations], GROUPS_PER_STATION, stats, acquisition);
+            station.setTiming(0, 0);
+            station.setMetrics(simMetrics);
+            threadController.execute(station);
+        }
+        threadController.shutdown();
+        threadController.awaitTermination(1, TimeUnit.MINUTES);
+        acquisition.close();
+        return stats.totalGroups();
+    }
+}
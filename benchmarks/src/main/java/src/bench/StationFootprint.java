@@ -0,0 +1,58 @@
+package src.bench;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import src.*;
+
+// Program to compare the heap taken by the station and conveyor state of a ring in the object model of the threaded
+// mode (a RoutingStation, a conveyor and a SplittableRandom per station) with the struct-of-arrays SteppedSim.
+// The facility itself is built first and shared, so only the state of each model is counted.
+// Run with: java -cp benchmarks/target/benchmarks.jar src.bench.StationFootprint [stations]
+public class StationFootprint {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] workloads = new int[count];
+        Arrays.fill(workloads, 10);
+        FacilityTopology topology = FacilityTopology.ring(WorkloadSource.of(workloads));
+        ConveyorAcquisitionStrategy strategy = ConveyorAcquisitionStrategy.create("trylock", topology);
+
+        for (String kind : new String[] {"lock", "atomic"}) {
+            long before = usedHeap();
+            ConveyorObj[] conveyors = new ConveyorObj[count];
+            for (int i = 0; i < count; i++) {
+                conveyors[i] = ConveyorObj.create(kind, i);
+            }
+            SimulationStats stats = SimulationStats.forThreads(count, 0);
+            SplittableRandom seeds = new SplittableRandom(1);
+            RoutingStation[] stations = new RoutingStation[count];
+            for (int i = 0; i < count; i++) {
+                stations[i] = new RoutingStation(i, conveyors[i], conveyors[(i + 1) % count], workloads[i], stats, strategy);
+                stations[i].setRandom(seeds.split());
+            }
+            long after = usedHeap();
+            report("objects, " + kind, count, after - before);
+            if (stations[count - 1].getStationID() != count - 1) {
+                throw new IllegalStateException("stations were not kept alive");
+            }
+        }
+
+        long before = usedHeap();
+        SteppedSim sim = new SteppedSim(topology, 1000, 500);
+        long after = usedHeap();
+        report("stepped arrays", count, after - before);
+        if (sim.getSteps() != 0) {
+            throw new IllegalStateException("the stepped simulation was not kept alive");
+        }
+    }
+
+    private static void report(String model, int count, long bytes) {
+        System.out.printf("%-16s %,d stations: %,d bytes, %.1f bytes/station%n", model, count, bytes, bytes / (double) count);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
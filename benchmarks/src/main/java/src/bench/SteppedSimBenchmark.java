@@ -0,0 +1,37 @@
+package src.bench;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import src.*;
+
+// Benchmark for the facility of SimulationThroughputBenchmark run by the struct-of-arrays engine, on 1, 2 and 4
+// worker threads - compare with VirtualClockBenchmark for the same facility on the heap-driven virtual clock
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SteppedSimBenchmark {
+    @Param({"2", "5", "10", "64", "1024"})
+    public int stations;
+
+    @Param({"1", "2", "4"})
+    public int parallelism;
+
+    private FacilityTopology topology;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] workload = new int[stations];
+        Arrays.fill(workload, SimulationThroughputBenchmark.GROUPS_PER_STATION);
+        topology = FacilityTopology.ring(WorkloadSource.of(workload));
+    }
+
+    @Benchmark
+    public long stepped() throws InterruptedException {
+        SteppedSim sim = new SteppedSim(topology, 0, 0);
+        sim.setSeed(1);
+        return sim.run(parallelism).totalGroups();
+    }
+}
@@ -0,0 +1,24 @@
+package src.bench;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import src.*;
+
+// Benchmark for the facility of SimulationThroughputBenchmark run by the discrete-event engine on a virtual clock
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualClockBenchmark {
+    @Param({"2", "5", "10", "64", "1024"})
+    public int stations;
+
+    @Benchmark
+    public long virtualClock() {
+        int[] workload = new int[stations];
+        Arrays.fill(workload, SimulationThroughputBenchmark.GROUPS_PER_STATION);
+        return new VirtualClockSim(workload, 0, 0).run().totalGroups();
+    }
+}
@@ -0,0 +1,45 @@
+package src;
+
+// Policy for back-off driven by how contended the conveyor is: every conveyor keeps a moving average of how often
+// attempts at it fail, pushed up by each failure and down each time a station that uses it gets all of its
+// conveyors, and a station sleeps a random time below that share of --max-sleep-ms. Quiet conveyors are retried
+// almost at once and busy ones are left alone for longer.
+// The averages are plain ints written by whichever station gets there - a lost update only nudges an estimate - and
+// they sit 128 bytes apart, so no two conveyors' averages share a cache line (or the pair of lines some processors
+// fetch together) wherever the array starts, and stations on different conveyors do not slow each other down.
+public class AdaptiveBackoff implements BackoffPolicy {
+    private static final int SCALE = 1 << 16; // a failure rate of 1.0
+    private static final int WEIGHT_SHIFT = 3; // each outcome moves the average 1/8 of the way
+    private static final int PAD = 32; // ints per conveyor - 128 bytes
+    private final int[] failureRate;
+
+    public AdaptiveBackoff(int numConveyors) {
+        this.failureRate = new int[numConveyors * PAD];
+    }
+
+    @Override
+    public void backOff(RoutingStation station, ConveyorObj conveyor) throws InterruptedException {
+        int rate = SCALE / 2; // a held up package group has no conveyor to learn from
+        if (conveyor != null) {
+            int slot = conveyor.getID() * PAD;
+            rate = failureRate[slot] + ((SCALE - failureRate[slot]) >> WEIGHT_SHIFT);
+            failureRate[slot] = rate;
+        }
+        station.sleepRandom((int) ((long) station.getMaxSleepMillis() * rate / SCALE));
+    }
+
+    @Override
+    public void acquired(RoutingStation station) {
+        for (ConveyorObj conveyor : station.getConveyors()) {
+            int slot = conveyor.getID() * PAD;
+            if (failureRate[slot] != 0) {
+                failureRate[slot] -= failureRate[slot] >> WEIGHT_SHIFT;
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "adaptive";
+    }
+}
@@ -0,0 +1,103 @@
+package src;
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+// Strategy for a central arbiter (the "waiter" of the dining philosophers). A station asks the arbiter for all of
+// its conveyors at once and sleeps until they are granted together, so it never holds one conveyor while waiting
+// for another. Requests queue per conveyor in arrival order and a station is only granted when it is first in
+// line on every one of its conveyors, so the earliest waiting station always gets through and nobody starves.
+public class ArbiterStrategy implements ConveyorAcquisitionStrategy {
+    private final ReentrantLock arbiterLock = new ReentrantLock();
+    private final Condition[] turn;
+    private final boolean[] busy;
+    private final ArrayDeque<Integer>[] waiting;
+    private final ConveyorObj[][] conveyorsOf;
+
+    // Constructor method - one wake-up condition per station and one request queue per conveyor
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ArbiterStrategy(int numStations, int numConveyors) {
+        this.turn = new Condition[numStations];
+        this.conveyorsOf = new ConveyorObj[numStations][];
+        for (int i = 0; i < numStations; i++) {
+            turn[i] = arbiterLock.newCondition();
+        }
+        this.busy = new boolean[numConveyors];
+        this.waiting = new ArrayDeque[numConveyors];
+        for (int c = 0; c < numConveyors; c++) {
+            waiting[c] = new ArrayDeque<>();
+        }
+    }
+
+    @Override
+    public void acquire(RoutingStation station) {
+        int stationID = station.getStationID();
+        ConveyorObj[] lockOrder = station.getLockOrder();
+
+        arbiterLock.lock();
+        try {
+            conveyorsOf[stationID] = lockOrder;
+            for (ConveyorObj conveyor : lockOrder) {
+                waiting[conveyor.getID()].addLast(stationID);
+            }
+            if (!grantable(stationID)) {
+                station.recordFailedAttempt();
+                do {
+                    turn[stationID].awaitUninterruptibly();
+                } while (!grantable(stationID));
+            }
+            for (ConveyorObj conveyor : lockOrder) {
+                waiting[conveyor.getID()].removeFirst();
+                busy[conveyor.getID()] = true;
+            }
+        } finally {
+            arbiterLock.unlock();
+        }
+
+        ConveyorObj[] conveyors = station.getConveyors();
+        for (int k = 0; k < conveyors.length; k++) {
+            conveyors[k].lockConveyorBlocking(stationID);
+            station.recordLocked(k);
+        }
+    }
+
+    // Method to check that every conveyor of a waiting station is free and it is first in line for them
+    private boolean grantable(int stationID) {
+        for (ConveyorObj conveyor : conveyorsOf[stationID]) {
+            int conveyorID = conveyor.getID();
+            if (busy[conveyorID] || waiting[conveyorID].peekFirst() != stationID) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void released(RoutingStation station) {
+        ConveyorObj[] lockOrder = station.getLockOrder();
+
+        arbiterLock.lock();
+        try {
+            for (ConveyorObj conveyor : lockOrder) {
+                busy[conveyor.getID()] = false;
+            }
+            for (ConveyorObj conveyor : lockOrder) {
+                wakeNext(conveyor.getID());
+            }
+        } finally {
+            arbiterLock.unlock();
+        }
+    }
+
+    // Method to wake the station first in line for a conveyor if it can now be granted
+    private void wakeNext(int conveyorID) {
+        Integer next = waiting[conveyorID].peekFirst();
+        if (next != null && grantable(next)) {
+            turn[next].signal();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "arbiter";
+    }
+}
@@ -0,0 +1,104 @@
+package src;
+import java.lang.invoke.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// Class for a conveyor whose ownership is a single atomic word holding the ID of the station that holds it.
+// Acquiring is one CAS from FREE to the station ID, releasing is one volatile store of FREE, and asking who holds
+// the conveyor is one volatile read, so the owner reported in a failed attempt is always the real one.
+// A station that has to wait spins up to spinLimit times and then parks; the queue of parked stations is only
+// created the first time somebody has to park, so an uncontended conveyor is just a few ints and a null reference.
+public class AtomicConveyor extends ConveyorObj {
+    public static final int DEFAULT_SPINS = 64;
+
+    private static final VarHandle OWNER;
+    private static final VarHandle WAITERS;
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            OWNER = lookup.findVarHandle(AtomicConveyor.class, "owner", int.class);
+            WAITERS = lookup.findVarHandle(AtomicConveyor.class, "waiters", ConcurrentLinkedQueue.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int spinLimit;
+    private volatile int owner = FREE;
+    private int holds = 0; // nested holds by the owner, only touched by the owning station
+    private volatile ConcurrentLinkedQueue<Thread> waiters;
+
+    // Constructor method - spinLimit 0 parks straight away
+    public AtomicConveyor(int conveyorID, int spinLimit) {
+        super(conveyorID);
+        this.spinLimit = spinLimit;
+    }
+
+    @Override
+    public int getLockedBy() {
+        return owner;
+    }
+
+    @Override
+    public boolean lockConveyor(int stationID) {
+        if (OWNER.compareAndSet(this, FREE, stationID)) {
+            return true;
+        }
+        if (owner == stationID) {
+            holds++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void lockConveyorBlocking(int stationID) {
+        if (lockConveyor(stationID)) {
+            return;
+        }
+        for (int i = 0; i < spinLimit; i++) {
+            Thread.onSpinWait();
+            if (owner == FREE && OWNER.compareAndSet(this, FREE, stationID)) {
+                return;
+            }
+        }
+
+        // Park until woken by a release - the CAS is retried after joining the queue so a release that happened
+        // in between is not missed
+        ConcurrentLinkedQueue<Thread> queue = waiterQueue();
+        Thread current = Thread.currentThread();
+        queue.add(current);
+        try {
+            while (!OWNER.compareAndSet(this, FREE, stationID)) {
+                LockSupport.park(this);
+            }
+        } finally {
+            queue.remove(current);
+        }
+    }
+
+    @Override
+    public void unlockConveyor() {
+        if (holds > 0) {
+            holds--;
+            return;
+        }
+        OWNER.setVolatile(this, FREE);
+        ConcurrentLinkedQueue<Thread> queue = waiters;
+        if (queue != null) {
+            Thread next = queue.peek();
+            if (next != null) {
+                LockSupport.unpark(next);
+            }
+        }
+    }
+
+    private ConcurrentLinkedQueue<Thread> waiterQueue() {
+        ConcurrentLinkedQueue<Thread> queue = waiters;
+        if (queue == null) {
+            WAITERS.compareAndSet(this, null, new ConcurrentLinkedQueue<Thread>());
+            queue = waiters;
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,37 @@
+package src;
+
+// Interface for how a routing station backs off after it could not get all of its conveyors, or after a package
+// group was held up by a full output conveyor. The station has already let go of every conveyor when backOff() is
+// called; the policy decides how long the station stays away. Policies that learn from the run are told when a
+// station gets all of its conveyors and when a conveyor is let go.
+public interface BackoffPolicy {
+    // Method to back off - conveyor is the one that was taken, or null after a held up package group
+    void backOff(RoutingStation station, ConveyorObj conveyor) throws InterruptedException;
+
+    // Method called when a station holds all of its conveyors
+    default void acquired(RoutingStation station) {
+    }
+
+    // Method called after a station unlocked a conveyor
+    default void released(ConveyorObj conveyor) {
+    }
+
+    // Name of the policy as used in the --backoff option and the run summary
+    String name();
+
+    // Method to build a back-off policy by name for the given facility
+    static BackoffPolicy create(String name, FacilityTopology topology) {
+        switch (name) {
+            case "random":
+                return new RandomBackoff();
+            case "exponential":
+                return new ExponentialBackoff(topology.numStations());
+            case "adaptive":
+                return new AdaptiveBackoff(topology.numConveyors());
+            case "park":
+                return new ParkUntilReleaseBackoff(topology.numConveyors());
+            default:
+                throw new IllegalArgumentException("Unknown back-off \"" + name + "\" - expected random, exponential, adaptive or park");
+        }
+    }
+}
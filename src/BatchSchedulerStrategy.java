@@ -0,0 +1,248 @@
+package src;
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+// Strategy for a central scheduler that grants conveyors in batches. Stations only announce that they are ready;
+// a scheduler thread wakes on every arrival or release and, in one tick, grants every ready station it can without
+// two granted stations sharing a conveyor, then wakes the granted stations to work. Requests arriving while a tick
+// runs are all picked up by the next one, so busy periods are scheduled in batches rather than one at a time.
+// Stations are coloured once so that no two stations of a colour share a conveyor (greedy colouring in station
+// order, which is even/odd on the ring, plus a third colour for the last station of an odd ring). Each tick starts
+// with the next colour in turn, so with every station ready a tick grants a whole colour class - floor(n / 2)
+// stations on an even ring, the most that can work at once - and then fills up with other colours. A ready station
+// of the colour whose turn it is that cannot be granted reserves its conveyors, so nothing else is granted on them
+// and it gets them as soon as their holders let go; that keeps any station from being passed over for ever.
+public class BatchSchedulerStrategy implements ConveyorAcquisitionStrategy {
+    private static final int FREE = -1;
+    private static final int PATIENCE = 16; // ticks a station is passed over before it reserves its conveyors
+
+    private final FacilityTopology topology;
+    private final int[] colour;
+    private final int numColours;
+    private final ReentrantLock schedulerLock = new ReentrantLock();
+    private final Condition work = schedulerLock.newCondition(); // signalled on every arrival and release
+    private final Condition[] turn;
+    private final boolean[] granted;
+    private final int[] passedOver; // ticks the station has been passed over for its current grant
+    private final boolean[] busy; // per conveyor, held by a granted station
+    private final int[] reservedBy; // per conveyor, the station it is kept for, or FREE
+    private final int[] ready; // stations waiting for a grant, in arrival order
+    private int numReady = 0;
+    private boolean changed = false;
+    private boolean closed = false;
+    private long ticks = 0;
+    private long grants = 0;
+    private int maxBatch = 0;
+    private final Thread scheduler;
+
+    // Constructor method - colours the stations and starts the scheduler thread
+    public BatchSchedulerStrategy(FacilityTopology topology) {
+        this.topology = topology;
+        int numStations = topology.numStations();
+        this.colour = new int[numStations];
+        this.numColours = colourStations(topology, colour);
+        this.turn = new Condition[numStations];
+        for (int i = 0; i < numStations; i++) {
+            turn[i] = schedulerLock.newCondition();
+        }
+        this.granted = new boolean[numStations];
+        this.passedOver = new int[numStations];
+        this.busy = new boolean[topology.numConveyors()];
+        this.reservedBy = new int[topology.numConveyors()];
+        Arrays.fill(reservedBy, FREE);
+        this.ready = new int[numStations];
+        this.scheduler = new Thread(this::schedule, "batch-scheduler");
+        scheduler.setDaemon(true);
+        scheduler.start();
+    }
+
+    // Method to colour the stations greedily in station order so that stations sharing a conveyor differ - returns
+    // the number of colours used
+    static int colourStations(FacilityTopology topology, int[] colour) {
+        int numColours = 0;
+        long[] taken = new long[1]; // colours of the neighbours seen, as a bit set
+        for (int s = 0; s < topology.numStations(); s++) {
+            Arrays.fill(taken, 0);
+            for (int k = 0; k < topology.conveyorCount(s); k++) {
+                int conveyorID = topology.conveyor(s, k);
+                for (int u = 0; u < topology.userCount(conveyorID); u++) {
+                    int other = topology.user(conveyorID, u);
+                    if (other < s) {
+                        if (colour[other] >> 6 >= taken.length) {
+                            taken = Arrays.copyOf(taken, (colour[other] >> 6) + 1);
+                        }
+                        taken[colour[other] >> 6] |= 1L << colour[other];
+                    }
+                }
+            }
+            int c = 0;
+            while (c >> 6 < taken.length && (taken[c >> 6] & (1L << c)) != 0) {
+                c++;
+            }
+            colour[s] = c;
+            numColours = Math.max(numColours, c + 1);
+        }
+        return numColours;
+    }
+
+    @Override
+    public void acquire(RoutingStation station) {
+        int stationID = station.getStationID();
+        boolean waited;
+        schedulerLock.lock();
+        try {
+            ready[numReady++] = stationID;
+            changed = true;
+            work.signal();
+            while (!granted[stationID]) {
+                turn[stationID].awaitUninterruptibly();
+            }
+            granted[stationID] = false;
+            waited = passedOver[stationID] > 0;
+            passedOver[stationID] = 0;
+        } finally {
+            schedulerLock.unlock();
+        }
+        if (waited) {
+            station.recordFailedAttempt();
+        }
+
+        // The conveyors are all free now - nobody else is granted them until this station releases
+        ConveyorObj[] conveyors = station.getConveyors();
+        for (int k = 0; k < conveyors.length; k++) {
+            conveyors[k].lockConveyorBlocking(stationID);
+            station.recordLocked(k);
+        }
+    }
+
+    @Override
+    public void released(RoutingStation station) {
+        int stationID = station.getStationID();
+        schedulerLock.lock();
+        try {
+            for (int k = 0; k < topology.conveyorCount(stationID); k++) {
+                busy[topology.conveyor(stationID, k)] = false;
+            }
+            changed = true;
+            work.signal();
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    // Method run by the scheduler thread - one tick per wake-up, until the strategy is closed
+    private void schedule() {
+        schedulerLock.lock();
+        try {
+            while (true) {
+                while (!changed && !closed) {
+                    work.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+                changed = false;
+                if (numReady > 0) {
+                    tick();
+                }
+            }
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    // Method for one scheduling tick: grant the ready stations colour by colour, starting with the colour whose
+    // turn it is, and keep the rest waiting in arrival order
+    private void tick() {
+        int first = (int) (ticks++ % numColours);
+        int batch = 0;
+        for (int i = 0; i < numColours; i++) {
+            int c = (first + i) % numColours;
+            for (int r = 0; r < numReady; r++) {
+                int stationID = ready[r];
+                if (stationID == FREE || colour[stationID] != c) {
+                    continue;
+                }
+                if (grantable(stationID)) {
+                    grant(stationID);
+                    ready[r] = FREE;
+                    batch++;
+                } else {
+                    if (++passedOver[stationID] > PATIENCE) {
+                        reserve(stationID);
+                    }
+                }
+            }
+        }
+        int kept = 0;
+        for (int r = 0; r < numReady; r++) {
+            if (ready[r] != FREE) {
+                ready[kept++] = ready[r];
+            }
+        }
+        numReady = kept;
+        grants += batch;
+        maxBatch = Math.max(maxBatch, batch);
+    }
+
+    // Method to check that no conveyor of a station is held, or kept for another station
+    private boolean grantable(int stationID) {
+        for (int k = 0; k < topology.conveyorCount(stationID); k++) {
+            int conveyorID = topology.conveyor(stationID, k);
+            if (busy[conveyorID] || (reservedBy[conveyorID] != FREE && reservedBy[conveyorID] != stationID)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Method to keep the conveyors of a station for it, unless some are already kept for another station
+    private void reserve(int stationID) {
+        for (int k = 0; k < topology.conveyorCount(stationID); k++) {
+            int holder = reservedBy[topology.conveyor(stationID, k)];
+            if (holder != FREE && holder != stationID) {
+                return;
+            }
+        }
+        for (int k = 0; k < topology.conveyorCount(stationID); k++) {
+            reservedBy[topology.conveyor(stationID, k)] = stationID;
+        }
+    }
+
+    private void grant(int stationID) {
+        for (int k = 0; k < topology.conveyorCount(stationID); k++) {
+            int conveyorID = topology.conveyor(stationID, k);
+            busy[conveyorID] = true;
+            reservedBy[conveyorID] = FREE;
+        }
+        granted[stationID] = true;
+        turn[stationID].signal();
+    }
+
+    @Override
+    public void close() {
+        schedulerLock.lock();
+        try {
+            closed = true;
+            work.signal();
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    @Override
+    public String summary() {
+        schedulerLock.lock();
+        try {
+            return "Batch scheduler: " + numColours + " colour(s), " + ticks + " tick(s), " + grants + " grant(s), "
+            + String.format(Locale.ROOT, "%.2f", ticks > 0 ? (double) grants / ticks : 0) + " per tick on average, at most " + maxBatch;
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "batch";
+    }
+}
@@ -0,0 +1,242 @@
+package src;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Class for following a threaded run to its end. Every station reports each package group it completes and
+// checks in when its thread starts and stops, so the run is over exactly when the last station has stopped - not
+// when a fixed timeout expires. Stations added while the run goes on are counted in before they start, so they
+// are waited for too, and the total of package groups follows work added or dropped on the way. The thread waiting for the run also supervises it:
+//   --stall-ms      watchdog window (default 30000, 0 turns it off): no package group completed anywhere for this
+//                   long is reported with the owner of every conveyor, as a livelock or a very slow ring would be
+//   --on-stall      what to do about a stall - report (default), drain or abort
+//   --max-run-ms    drain the run once it has taken this long (default no limit)
+//   --drain-ms      abort a drain that has not finished after this long (default 10000)
+//   --progress-ms   print the progress every this many milliseconds (default off)
+// Draining lets every station finish the package group it is on and stop before the next one. Aborting also
+// interrupts the station threads, so a station drops the group it is working and stops sleeping; it still lets go
+// of its conveyors before it stops. Interrupting the waiting thread aborts the run.
+public class CompletionTracker {
+    private static final int RUNNING = 0;
+    private static final int DRAINING = 1;
+    private static final int ABORTING = 2;
+    private static final long TICK_MILLIS = 100; // how often the waiting thread looks at the run
+
+    private final AtomicLong totalGroups;
+    private final LongAdder completed = new LongAdder();
+    private final AtomicInteger running; // station threads that have not stopped yet - once 0 it stays 0
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final Map<Integer, Thread> threads = new ConcurrentHashMap<>();
+    private volatile int state = RUNNING;
+    private volatile String stopReason;
+    private ConveyorObj[] conveyors = new ConveyorObj[0];
+    private long stallMillis = 30_000;
+    private String onStall = "report";
+    private long maxRunMillis = 0;
+    private long drainMillis = 10_000;
+    private long progressMillis = 0;
+
+    // Constructor method - the stations from first to end - 1 of the facility are the ones tracked
+    public CompletionTracker(FacilityTopology topology, int first, int end) {
+        long groups = 0;
+        for (int s = first; s < end; s++) {
+            groups += topology.workload(s);
+        }
+        this.totalGroups = new AtomicLong(groups);
+        this.running = new AtomicInteger(end - first);
+        if (end == first) {
+            done.countDown();
+        }
+    }
+
+    // Method to read the supervision options - the conveyors are the ones the watchdog lists, null entries skipped
+    public void configure(SimOptions options, ConveyorObj[] conveyorArr) {
+        this.conveyors = conveyorArr;
+        this.stallMillis = options.getLong("stall-ms", 30_000);
+        this.onStall = options.get("on-stall", "report");
+        if (!onStall.equals("report") && !onStall.equals("drain") && !onStall.equals("abort")) {
+            throw new IllegalArgumentException("Unknown --on-stall \"" + onStall + "\" - expected report, drain or abort");
+        }
+        this.maxRunMillis = options.getLong("max-run-ms", 0);
+        this.drainMillis = options.getLong("drain-ms", 10_000);
+        this.progressMillis = options.getLong("progress-ms", 0);
+    }
+
+    // Method to count in a station added while the run goes on, before its thread is started - returns false
+    // when the run is already over
+    public boolean addStation(int workload) {
+        if (running.getAndUpdate(count -> count > 0 ? count + 1 : count) == 0) {
+            return false;
+        }
+        totalGroups.addAndGet(workload);
+        return true;
+    }
+
+    // Method to change the total when package groups are added to the run or dropped from it
+    public void addGroups(long groups) {
+        totalGroups.addAndGet(groups);
+    }
+
+    // Method for a station thread to check in when it starts
+    public void stationOnline(int stationID) {
+        threads.put(stationID, Thread.currentThread());
+    }
+
+    // Method for a station thread to check out when it stops, whether its workload is done or not
+    public void stationOffline(int stationID) {
+        threads.remove(stationID);
+        if (running.decrementAndGet() == 0) {
+            done.countDown();
+        }
+    }
+
+    // Method for a station to report a completed package group
+    public void groupCompleted() {
+        completed.increment();
+    }
+
+    // True once the stations have been told to stop before their workloads are done
+    public boolean isStopping() {
+        return state != RUNNING;
+    }
+
+    // True once the stations have been told to stop at once
+    public boolean isAborting() {
+        return state == ABORTING;
+    }
+
+    public long completedGroups() {
+        return completed.sum();
+    }
+
+    public long totalGroups() {
+        return totalGroups.get();
+    }
+
+    // Number of station threads that have not stopped yet
+    public long stationsRunning() {
+        return running.get();
+    }
+
+    // Share of the package groups completed so far, from 0 to 1
+    public double progress() {
+        long total = totalGroups();
+        return total > 0 ? (double) completedGroups() / total : 1;
+    }
+
+    // True when every package group of the tracked stations was completed
+    public boolean isComplete() {
+        return completedGroups() >= totalGroups();
+    }
+
+    // Why the run was stopped early, or null if it was not
+    public String getStopReason() {
+        return stopReason;
+    }
+
+    // Method to let every station finish its current package group and stop
+    public void drain(String reason) {
+        if (state == RUNNING) {
+            stopReason = "drained: " + reason;
+            state = DRAINING;
+            System.out.println("\n*** DRAINING THE SIMULATION - " + reason + " ***");
+        }
+    }
+
+    // Method to stop every station at once - sleeping and working stations are interrupted
+    public void abort(String reason) {
+        if (state != ABORTING) {
+            stopReason = "aborted: " + reason;
+            state = ABORTING;
+            System.out.println("\n*** ABORTING THE SIMULATION - " + reason + " ***");
+            for (Thread thread : threads.values()) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    // Method to wait until every station has stopped, supervising the run meanwhile - an interrupt of the waiting
+    // thread aborts the run, which is still waited for before the interrupt is passed on
+    public void awaitCompletion() throws InterruptedException {
+        long start = System.nanoTime();
+        long lastProgressAt = start;
+        long lastCompleted = completedGroups();
+        long lastChange = start;
+        long drainStart = 0;
+        boolean stallReported = false;
+        try {
+            while (!finished(TICK_MILLIS)) {
+                long now = System.nanoTime();
+                long done = completedGroups();
+                if (done != lastCompleted) {
+                    lastCompleted = done;
+                    lastChange = now;
+                    stallReported = false;
+                } else if (stallMillis > 0 && !stallReported && now - lastChange >= stallMillis * 1_000_000) {
+                    stallReported = true;
+                    reportStall((now - lastChange) / 1_000_000);
+                    if (onStall.equals("drain")) {
+                        drain("no package group completed in " + stallMillis + " ms");
+                    } else if (onStall.equals("abort")) {
+                        abort("no package group completed in " + stallMillis + " ms");
+                    }
+                }
+                if (maxRunMillis > 0 && now - start >= maxRunMillis * 1_000_000) {
+                    drain("the run reached --max-run-ms=" + maxRunMillis);
+                }
+                if (state == DRAINING) {
+                    if (drainStart == 0) {
+                        drainStart = now;
+                    } else if (now - drainStart >= drainMillis * 1_000_000) {
+                        abort("the drain took longer than --drain-ms=" + drainMillis);
+                    }
+                }
+                if (progressMillis > 0 && now - lastProgressAt >= progressMillis * 1_000_000) {
+                    lastProgressAt = now;
+                    System.out.println(describeProgress());
+                }
+            }
+        } catch (InterruptedException e) {
+            abort("the simulation was interrupted");
+            finished(drainMillis);
+            throw e;
+        }
+    }
+
+    // Method to wait up to the given time for every station to stop - true once they all have
+    private boolean finished(long millis) throws InterruptedException {
+        return done.await(millis, TimeUnit.MILLISECONDS);
+    }
+
+    // Method to describe the progress, e.g. "Progress: 45.2% (1234 of 2730 package groups), 7 station(s) running"
+    public String describeProgress() {
+        return String.format(Locale.ROOT, "Progress: %.1f%% (%d of %d package groups), %d station(s) running", progress() * 100,
+        completedGroups(), totalGroups(), stationsRunning());
+    }
+
+    // Method for the watchdog to report a stall with the owner of every conveyor - only held conveyors are listed,
+    // and only the first LISTED_STATIONS of them on a large facility
+    private void reportStall(long stalledMillis) {
+        StringBuilder owners = new StringBuilder();
+        int held = 0;
+        int known = 0;
+        for (ConveyorObj conveyor : conveyors) {
+            if (conveyor == null) {
+                continue;
+            }
+            known++;
+            int owner = conveyor.getLockedBy();
+            if (owner != ConveyorObj.FREE) {
+                if (held < PackageRoutingSim.LISTED_STATIONS) {
+                    owners.append(held > 0 ? ", " : "").append('C').append(conveyor.getID()).append(" S").append(owner);
+                }
+                held++;
+            }
+        }
+        System.out.println("\n*** WATCHDOG: NO PACKAGE GROUP COMPLETED IN THE LAST " + stalledMillis + " MS - POSSIBLE LIVELOCK ***");
+        System.out.println("\t" + describeProgress());
+        System.out.println("\tConveyors held: " + held + " of " + known + (held > 0 ? " - " + owners : "")
+        + (held > PackageRoutingSim.LISTED_STATIONS ? ", ..." : ""));
+    }
+}
@@ -0,0 +1,185 @@
+package src;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+// Class for reading and writing the station workloads of a config file. The file is read through a memory-mapped
+// view and parsed straight into an int[] - no lines, strings or boxed values are made - so a config of millions of
+// stations loads in a fraction of a second. Two formats are read, told apart by the first bytes of the file:
+//   text   - the original config.txt: the number of stations, then one workload per line (blank lines are skipped)
+//   binary - the magic "PRSC", a version, the number of stations and then one workload per station, each a
+//            little-endian 32-bit int after the 16-byte header; written for any --write-config path ending in .bin
+public class ConfigFile {
+    private static final int MAGIC = 0x43535250; // "PRSC" read as a little-endian int
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final long WINDOW = 1L << 30; // text files are mapped 1 GB at a time
+
+    // Method to read the workloads of a config file in either format
+    public static int[] read(String path) throws IOException {
+        Path file = Paths.get(path);
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("Cannot read the config file " + path + " - it does not exist");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() >= 4) {
+                ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(magic, 0);
+                if (magic.getInt(0) == MAGIC) {
+                    return readBinary(path, channel);
+                }
+            }
+            return readText(path, channel);
+        }
+    }
+
+    private static IllegalArgumentException error(String path, long line, String message) {
+        return new IllegalArgumentException(path + ":" + line + ": " + message);
+    }
+
+    // Method to parse the text format byte by byte - a number ends at whitespace, a line at '\n'
+    private static int[] readText(String path, FileChannel channel) throws IOException {
+        long size = channel.size();
+        int[] workloads = null; // made once the number of stations is read
+        int count = 0;
+        long line = 1;
+        long value = 0;
+        int digits = 0;
+        boolean lineHasNumber = false;
+        for (long start = 0; start < size; start += WINDOW) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+            int limit = window.limit();
+            for (int i = 0; i < limit; i++) {
+                byte b = window.get(i);
+                if (b >= '0' && b <= '9') {
+                    if (digits == 0 && lineHasNumber) {
+                        throw error(path, line, "expected one number per line");
+                    }
+                    value = value * 10 + (b - '0');
+                    if (value > Integer.MAX_VALUE) {
+                        throw error(path, line, "the number is too large");
+                    }
+                    digits++;
+                    lineHasNumber = true;
+                } else if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    if (digits > 0) {
+                        if (workloads == null) {
+                            workloads = stations(path, line, value);
+                        } else if (count == workloads.length) {
+                            throw error(path, line, "there are more workloads than the " + workloads.length + " stations given on the first line");
+                        } else {
+                            workloads[count++] = (int) value;
+                        }
+                        value = 0;
+                        digits = 0;
+                    }
+                    if (b == '\n') {
+                        line++;
+                        lineHasNumber = false;
+                    }
+                } else if (b == '-') {
+                    throw error(path, line, workloads == null ? "the number of stations cannot be negative" : "a workload cannot be negative");
+                } else {
+                    throw error(path, line, "expected a whole number but found '" + (char) (b & 0xFF) + "'");
+                }
+            }
+        }
+
+        // The last number may not be followed by a line break
+        if (digits > 0) {
+            if (workloads == null) {
+                workloads = stations(path, line, value);
+            } else if (count == workloads.length) {
+                throw error(path, line, "there are more workloads than the " + workloads.length + " stations given on the first line");
+            } else {
+                workloads[count++] = (int) value;
+            }
+        }
+        if (workloads == null) {
+            throw new IllegalArgumentException(path + ": the config file is empty - expected the number of stations");
+        }
+        if (count < workloads.length) {
+            throw new IllegalArgumentException(path + ": expected " + workloads.length + " workloads but found only " + count);
+        }
+        return workloads;
+    }
+
+    private static int[] stations(String path, long line, long numStations) {
+        if (numStations < 1) {
+            throw error(path, line, "a facility needs at least 1 station");
+        }
+        return new int[(int) numStations];
+    }
+
+    // Method to read the binary format - the workloads are copied out of the mapping in one bulk get
+    private static int[] readBinary(String path, FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_BYTES) {
+            throw new IllegalArgumentException(path + ": the binary config header is cut short");
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(4) != VERSION) {
+            throw new IllegalArgumentException(path + ": binary config version " + header.getInt(4) + " is not supported - expected " + VERSION);
+        }
+        int numStations = header.getInt(8);
+        if (numStations < 1) {
+            throw new IllegalArgumentException(path + ": a facility needs at least 1 station, the header gives " + numStations);
+        }
+        if (size != HEADER_BYTES + 4L * numStations) {
+            throw new IllegalArgumentException(path + ": the header gives " + numStations + " stations, which needs " + (HEADER_BYTES + 4L * numStations)
+            + " bytes, but the file has " + size);
+        }
+        int[] workloads = new int[numStations];
+        MappedByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 4L * numStations);
+        body.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(workloads);
+        for (int i = 0; i < numStations; i++) {
+            if (workloads[i] < 0) {
+                throw new IllegalArgumentException(path + ": station S" + i + " has a negative workload");
+            }
+        }
+        return workloads;
+    }
+
+    // Method to stream a workload source out to a config file - binary when the path ends in .bin, else text
+    public static void write(WorkloadSource source, String path) throws IOException {
+        if (path.endsWith(".bin")) {
+            writeBinary(source, path);
+            return;
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path), 1 << 16)) {
+            writer.write(Integer.toString(source.numStations()));
+            writer.newLine();
+            for (int i = 0; i < source.numStations(); i++) {
+                writer.write(Integer.toString(source.workload(i)));
+                writer.newLine();
+            }
+        }
+    }
+
+    private static void writeBinary(WorkloadSource source, String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(source.numStations()).putInt(0);
+            for (int i = 0; i < source.numStations(); i++) {
+                if (!buffer.hasRemaining()) {
+                    drain(channel, buffer);
+                }
+                buffer.putInt(source.workload(i));
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,43 @@
+package src;
+
+// Interface for the ways a routing station can get hold of all of its conveyors before it works a package group.
+// Every strategy ends with the station holding the ConveyorObj locks on each of its input and output conveyors;
+// the station unlocks them itself after the work and then calls released() so the strategy can update its own state.
+public interface ConveyorAcquisitionStrategy {
+    // Method to block until the station holds the locks on all of its input and output conveyors
+    void acquire(RoutingStation station);
+
+    // Method called after the station has unlocked both of its conveyors
+    default void released(RoutingStation station) {
+    }
+
+    // Method called once the run is over, to stop anything the strategy runs on its own threads
+    default void close() {
+    }
+
+    // Method to describe what the strategy did for the run summary, or null when it has nothing to add
+    default String summary() {
+        return null;
+    }
+
+    // Name of the strategy as used in the --strategy option and the run summary
+    String name();
+
+    // Method to build a strategy by name for the given facility
+    static ConveyorAcquisitionStrategy create(String name, FacilityTopology topology) {
+        switch (name) {
+            case "trylock":
+                return new TryLockBackoffStrategy();
+            case "ordered":
+                return new OrderedAcquisitionStrategy();
+            case "token":
+                return new TokenHandoffStrategy(topology);
+            case "arbiter":
+                return new ArbiterStrategy(topology.numStations(), topology.numConveyors());
+            case "batch":
+                return new BatchSchedulerStrategy(topology);
+            default:
+                throw new IllegalArgumentException("Unknown strategy \"" + name + "\" - expected trylock, ordered, token, arbiter or batch");
+        }
+    }
+}
@@ -1,41 +1,49 @@
 package src;
-import java.util.concurrent.locks.*;
 
-// Class for the instances of the lockable conveyors
-public class ConveyorObj {
+// Class for the instances of the lockable conveyors. A conveyor is held by at most one station at a time; holding
+// it again from the station that already holds it nests, like a ReentrantLock, so a one-station ring whose input
+// and output are the same conveyor still works. The locking itself is done by the subclasses:
+//   LockConveyor   - a ReentrantLock plus the ID of the holding station (the original conveyor)
+//   AtomicConveyor - a single CAS-updated owner word, optionally spinning before it parks
+//   TracedConveyor - any of the above, with its locking recorded to or replayed from a SimTrace
+public abstract class ConveyorObj {
+    public static final int FREE = -1; // -1 indicates no station holds the lock
+
     private final int conveyorID;
-    private final ReentrantLock conveyorLock = new ReentrantLock();
-    private int lockedBy = -1; // -1 indicates no station holds the lock
 
     // Constructor method - build a conveyor object instance
-    public ConveyorObj(int conveyorID) {
+    protected ConveyorObj(int conveyorID) {
         this.conveyorID = conveyorID;
     }
 
+    // Method to build a conveyor of the kind named in the --conveyor option
+    public static ConveyorObj create(String kind, int conveyorID) {
+        switch (kind) {
+            case "lock":
+                return new LockConveyor(conveyorID);
+            case "atomic":
+                return new AtomicConveyor(conveyorID, AtomicConveyor.DEFAULT_SPINS);
+            case "atomic-park":
+                return new AtomicConveyor(conveyorID, 0);
+            default:
+                throw new IllegalArgumentException("Unknown conveyor \"" + kind + "\" - expected lock, atomic or atomic-park");
+        }
+    }
+
     // Getter function for ID
     public int getID(){
         return conveyorID;
     }
-    
-    // Method to get the ID of the station that holds the lock
-    public int getLockedBy() {
-        return lockedBy;
-    }
 
-    // Method for routing stations to acquire a conveyor object lock
-    public boolean lockConveyor(int stationID) {
-        if (conveyorLock.tryLock()) {
-            lockedBy = stationID;
-            return true;
-        }
-        else{
-            return false;
-        }
-    }
+    // Method to get the ID of the station that holds the lock, or FREE
+    public abstract int getLockedBy();
+
+    // Method for routing stations to acquire a conveyor object lock without waiting
+    public abstract boolean lockConveyor(int stationID);
+
+    // Method for routing stations to wait until the conveyor lock is free and take it
+    public abstract void lockConveyorBlocking(int stationID);
 
     // Method for routing stations to release a conveyor lock
-    public void unlockConveyor() {
-        conveyorLock.unlock();
-        lockedBy = -1;
-    }
+    public abstract void unlockConveyor();
 }
@@ -0,0 +1,296 @@
+package src;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+// Class for the event log of one simulation run. Stations record compact events (type, station, conveyor, argument,
+// nanoTime) into one of a fixed set of ring buffers, picked by station ID, and a background writer drains all
+// buffers, orders each batch by time and formats it into the familiar narrative text. Nothing is formatted or
+// printed while a station holds a conveyor, and at level OFF record() returns before touching any buffer, so the
+// hot path does not allocate. The buffers belong to the log rather than to threads, so their memory is the same
+// for ten stations or a million, and nothing is left behind by threads that have finished.
+public class EventLog {
+    // Verbosity levels - each event type is printed at its own level and every level above it
+    public static final int OFF = 0;
+    public static final int PROGRESS = 1; // stations coming online, package groups completed, stations going offline
+    public static final int FULL = 2; // the full narrative: every lock, release and failed attempt
+
+    // Event types
+    public static final int INPUT_ASSIGNED = 0;
+    public static final int OUTPUT_ASSIGNED = 1;
+    public static final int WORKLOAD_ASSIGNED = 2; // arg = workload
+    public static final int STATION_ONLINE = 3;
+    public static final int INPUT_LOCKED = 4;
+    public static final int OUTPUT_LOCKED = 5;
+    public static final int OUTPUT_LOCK_FAILED = 6; // conveyor = output, arg = (holding station << 32) | first conveyor held
+    public static final int INPUT_RELEASED = 7;
+    public static final int OUTPUT_RELEASED = 8;
+    public static final int WORKING = 9;
+    public static final int GROUP_COMPLETED = 10; // arg = package groups remaining
+    public static final int WORK_COMPLETED = 11;
+    public static final int STATION_OFFLINE = 12;
+    public static final int GROUP_BLOCKED = 13;
+    public static final int INPUT_LOCK_FAILED = 14; // conveyor = the taken input, arg = (holding station << 32) | first conveyor held
+
+    private static final int[] EVENT_LEVEL = {FULL, FULL, FULL, PROGRESS, FULL, FULL, FULL, FULL, FULL, FULL, PROGRESS, PROGRESS, PROGRESS, FULL, FULL};
+    private static final int WORDS_PER_EVENT = 4;
+    private static final int BUFFER_EVENTS = 1024; // per buffer, a power of two
+    private static final int MAX_BUFFERS = 64;
+    private static final EventLog DISABLED = new EventLog();
+
+    private volatile int level; // read by every station thread, set to OFF by close()
+    private final RingBuffer[] buffers;
+    private final Writer writerThread;
+
+    // Constructor method for the log that keeps nothing
+    private EventLog() {
+        this.level = OFF;
+        this.buffers = new RingBuffer[0];
+        this.writerThread = null;
+    }
+
+    // Constructor method - starts the background writer unless the level is OFF. The log has to be handed to the
+    // stations before their threads start.
+    public EventLog(int level, PrintStream out) {
+        this.level = level;
+        if (level == OFF) {
+            this.buffers = new RingBuffer[0];
+            this.writerThread = null;
+            return;
+        }
+        // About two buffers per processor, so stations writing at the same time seldom share one
+        int numBuffers = Math.min(MAX_BUFFERS, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1));
+        this.buffers = new RingBuffer[numBuffers];
+        for (int i = 0; i < numBuffers; i++) {
+            buffers[i] = new RingBuffer();
+        }
+        this.writerThread = new Writer(out);
+        writerThread.start();
+    }
+
+    // Method to get the log that keeps nothing, for runs without one
+    public static EventLog disabled() {
+        return DISABLED;
+    }
+
+    // Method to parse a level name from the --log option
+    public static int parseLevel(String name) {
+        switch (name) {
+            case "full":
+                return FULL;
+            case "progress":
+                return PROGRESS;
+            case "off":
+                return OFF;
+            default:
+                throw new IllegalArgumentException("Unknown log level \"" + name + "\" - expected full, progress or off");
+        }
+    }
+
+    // Method to write out every recorded event and stop the background writer
+    public void close() {
+        level = OFF;
+        if (writerThread != null) {
+            writerThread.finish();
+        }
+    }
+
+    // Method to check whether events of a type are being kept, for callers that want to skip work up front
+    public boolean isEnabled(int type) {
+        return level >= EVENT_LEVEL[type];
+    }
+
+    // Method for stations to record an event
+    public void record(int type, int stationID, int conveyorID, long arg) {
+        if (level < EVENT_LEVEL[type]) {
+            return;
+        }
+        buffers[stationID & (buffers.length - 1)].add(System.nanoTime(), type, ((long) stationID << 32) | (conveyorID & 0xFFFFFFFFL), arg);
+    }
+
+    // Class for a multi-producer single-consumer ring buffer of events - stations claim a slot, fill it and publish
+    // it, and the writer reads the published slots in claim order. All events of a station go through the same
+    // buffer, so they stay in order.
+    private static final class RingBuffer {
+        private final long[] slots = new long[BUFFER_EVENTS * WORDS_PER_EVENT];
+        private final AtomicLongArray published = new AtomicLongArray(BUFFER_EVENTS); // per slot, 1 + the last event written to it
+        private final AtomicLong head = new AtomicLong(); // events claimed
+        private volatile long tail = 0; // events read
+
+        // Method to append an event, waiting for the writer to make room if the buffer is full
+        void add(long nanos, int type, long ids, long arg) {
+            long h = head.getAndIncrement();
+            while (h - tail >= BUFFER_EVENTS) {
+                Thread.onSpinWait();
+            }
+            int slot = (int) (h & (BUFFER_EVENTS - 1));
+            int base = slot * WORDS_PER_EVENT;
+            slots[base] = nanos;
+            slots[base + 1] = type;
+            slots[base + 2] = ids;
+            slots[base + 3] = arg;
+            published.lazySet(slot, h + 1);
+        }
+
+        // Method to copy the published events into the batch and free their slots - stops at the first event that
+        // was claimed but not yet written
+        void drainTo(Batch batch) {
+            long t = tail;
+            while (true) {
+                int slot = (int) (t & (BUFFER_EVENTS - 1));
+                if (published.get(slot) != t + 1) {
+                    break;
+                }
+                int base = slot * WORDS_PER_EVENT;
+                batch.add(slots[base], slots[base + 1], slots[base + 2], slots[base + 3]);
+                t++;
+            }
+            tail = t;
+        }
+    }
+
+    // Class for the events collected in one pass of the writer, kept in primitive arrays and sorted by time
+    private static final class Batch {
+        private long[] words = new long[1024 * WORDS_PER_EVENT];
+        private Integer[] order = new Integer[0];
+        private int size = 0;
+
+        void add(long nanos, long type, long ids, long arg) {
+            if ((size + 1) * WORDS_PER_EVENT > words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            int base = size * WORDS_PER_EVENT;
+            words[base] = nanos;
+            words[base + 1] = type;
+            words[base + 2] = ids;
+            words[base + 3] = arg;
+            size++;
+        }
+
+        // Method to format the batch in time order into the text builder
+        void formatTo(StringBuilder text) {
+            if (order.length < size) {
+                order = new Integer[Math.max(size, order.length * 2)];
+            }
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, 0, size, (a, b) -> Long.compare(words[a * WORDS_PER_EVENT], words[b * WORDS_PER_EVENT]));
+            for (int i = 0; i < size; i++) {
+                int base = order[i] * WORDS_PER_EVENT;
+                format(text, (int) words[base + 1], (int) (words[base + 2] >>> 32), (int) words[base + 2], words[base + 3]);
+            }
+            size = 0;
+        }
+    }
+
+    // Method to turn one event into the same text the stations used to print themselves
+    static void format(StringBuilder text, int type, int stationID, int conveyorID, long arg) {
+        switch (type) {
+            case INPUT_ASSIGNED:
+                text.append("\tRouting Station S").append(stationID).append(": Input conveyor assigned to conveyor number C").append(conveyorID).append(".\n");
+                break;
+            case OUTPUT_ASSIGNED:
+                text.append("\tRouting Station S").append(stationID).append(": Output conveyor assigned to conveyor number C").append(conveyorID).append(".\n");
+                break;
+            case WORKLOAD_ASSIGNED:
+                text.append("\tRouting Station S").append(stationID).append(" Has Total Workload of ").append(arg).append(" Package Groups.\n\n");
+                break;
+            case STATION_ONLINE:
+                text.append("\n*** ROUTING STATION S").append(stationID).append(" Coming Online - Initializing Conveyors ***\n\n");
+                break;
+            case INPUT_LOCKED:
+                text.append("\n\tRouting Station S").append(stationID).append(": Currently holds lock on input conveyor C").append(conveyorID).append('\n');
+                break;
+            case OUTPUT_LOCKED:
+                text.append("\n\tRouting Station S").append(stationID).append(": Currently holds lock on output conveyor C").append(conveyorID).append('\n');
+                break;
+            case OUTPUT_LOCK_FAILED:
+                text.append("\n\tRouting Station S").append(stationID).append(": UNABLE TO LOCK OUTPUT CONVEYOR C").append(conveyorID)
+                .append(".\n\t\tSYNCHRONIZATION ISSUE: Station S").append((int) (arg >> 32)).append(" currently holds the lock on output\n\t\tconveyor C")
+                .append(conveyorID).append(" - Station S").append(stationID).append(" releasing lock on input conveyor C").append((int) arg).append('\n');
+                break;
+            case INPUT_RELEASED:
+                text.append("\n\tRouting Station S").append(stationID).append(": Unlocks/releases input conveyor C").append(conveyorID).append('\n');
+                break;
+            case OUTPUT_RELEASED:
+                text.append("\n\tRouting Station S").append(stationID).append(": Unlocks/releases output conveyor C").append(conveyorID).append('\n');
+                break;
+            case WORKING:
+                text.append("\n*** Routing Station S").append(stationID).append(": CURRENTLY HOLDS BOTH - INPUT CONVOYOR AND OUTPUT CONVEYOR ***")
+                .append("\n*** Routing Station S").append(stationID).append(": CURRENTLY WORKING - MOVING PACKAGES. ***\n");
+                break;
+            case GROUP_COMPLETED:
+                text.append("\n\t*** Routing Station S").append(stationID).append(": Package group completed - ").append(arg).append(" package groups remaining to move. ***\n\n");
+                break;
+            case WORK_COMPLETED:
+                text.append("\n*** Routing Station S").append(stationID).append(": going offline – work completed! BYE! ***\n\n");
+                break;
+            case STATION_OFFLINE:
+                text.append("\n*** ROUTING STATION S").append(stationID).append(": OFFLINE ***\n\n");
+                break;
+            case GROUP_BLOCKED:
+                text.append("\n\t*** Routing Station S").append(stationID)
+                .append(": Output conveyors are full - package group held up until packages are taken off. ***\n");
+                break;
+            case INPUT_LOCK_FAILED:
+                text.append("\n\tRouting Station S").append(stationID).append(": UNABLE TO LOCK INPUT CONVEYOR C").append(conveyorID)
+                .append(".\n\t\tSYNCHRONIZATION ISSUE: Station S").append((int) (arg >> 32)).append(" currently holds the lock on input\n\t\tconveyor C")
+                .append(conveyorID).append(" - Station S").append(stationID).append(" releasing lock on input conveyor C").append((int) arg).append('\n');
+                break;
+            default:
+                text.append("\tUnknown event ").append(type).append(" from station S").append(stationID).append('\n');
+        }
+    }
+
+    // Class for the background thread that batches the buffered events out to the stream
+    private final class Writer extends Thread {
+        private final PrintStream out;
+        private final Batch batch = new Batch();
+        private final StringBuilder text = new StringBuilder(1 << 16);
+        private volatile boolean finishing = false;
+
+        Writer(PrintStream out) {
+            super("event-log-writer");
+            this.out = out;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!finishing) {
+                if (!writeBatch()) {
+                    LockSupport.parkNanos(1_000_000); // nothing new - check again in a millisecond
+                }
+            }
+            while (writeBatch()) {
+                // drain whatever was recorded before close() was called
+            }
+            out.flush();
+        }
+
+        // Method to drain every buffer once and write the batch, returns whether there was anything to write
+        private boolean writeBatch() {
+            for (RingBuffer buffer : buffers) {
+                buffer.drainTo(batch);
+            }
+            if (batch.size == 0) {
+                return false;
+            }
+            batch.formatTo(text);
+            out.print(text);
+            text.setLength(0);
+            return true;
+        }
+
+        void finish() {
+            finishing = true;
+            try {
+                join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package src;
+import java.util.Arrays;
+
+// Class for the priority queue of the virtual clock scheduler - a binary min-heap over parallel primitive arrays
+// so that scheduling an event never allocates. Events at the same time come out in the order they were scheduled.
+public class EventQueue {
+    private long[] times = new long[64];
+    private long[] order = new long[64];
+    private int[] events = new int[64];
+    private int size = 0;
+    private long nextOrder = 0;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Method to get the time of the earliest event (only valid when the queue is not empty)
+    public long peekTime() {
+        return times[0];
+    }
+
+    // Method to get the payload of the earliest event (only valid when the queue is not empty)
+    public int peekEvent() {
+        return events[0];
+    }
+
+    // Method to schedule an event at the given virtual time
+    public void push(long time, int event) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            order = Arrays.copyOf(order, size * 2);
+            events = Arrays.copyOf(events, size * 2);
+        }
+        int i = size++;
+        long seq = nextOrder++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(time, seq, times[parent], order[parent])) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        times[i] = time;
+        order[i] = seq;
+        events[i] = event;
+    }
+
+    // Method to remove the earliest event - read it with peekTime()/peekEvent() first
+    public void pop() {
+        size--;
+        if (size == 0) {
+            return;
+        }
+        long time = times[size];
+        long seq = order[size];
+        int event = events[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(times[child + 1], order[child + 1], times[child], order[child])) {
+                child++;
+            }
+            if (!before(times[child], order[child], time, seq)) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        times[i] = time;
+        order[i] = seq;
+        events[i] = event;
+    }
+
+    // Methods to read the heap slots as they are laid out, for a checkpoint
+    long timeAt(int i) {
+        return times[i];
+    }
+
+    long orderAt(int i) {
+        return order[i];
+    }
+
+    int eventAt(int i) {
+        return events[i];
+    }
+
+    long nextOrder() {
+        return nextOrder;
+    }
+
+    // Method to load heap slots saved from a checkpoint - they are already in heap order, so they are taken as they are
+    void restore(long[] slotTimes, long[] slotOrder, int[] slotEvents, int count, long next) {
+        int capacity = Math.max(64, count);
+        times = Arrays.copyOf(slotTimes, capacity);
+        order = Arrays.copyOf(slotOrder, capacity);
+        events = Arrays.copyOf(slotEvents, capacity);
+        size = count;
+        nextOrder = next;
+    }
+
+    private static boolean before(long timeA, long seqA, long timeB, long seqB) {
+        return timeA < timeB || (timeA == timeB && seqA < seqB);
+    }
+
+    private void move(int from, int to) {
+        times[to] = times[from];
+        order[to] = order[from];
+        events[to] = events[from];
+    }
+}
@@ -0,0 +1,31 @@
+package src;
+
+// Policy for exponential back-off with full jitter: after the n-th failure in a row a station sleeps a random time
+// below BASE_MILLIS * 2^n, capped at --max-sleep-ms, and the count starts again once it gets its conveyors. A
+// station that fails once comes back almost at once, while a crowd of stations failing together spreads out fast.
+public class ExponentialBackoff implements BackoffPolicy {
+    private static final int BASE_MILLIS = 2;
+    private static final int MAX_SHIFT = 20;
+    private final int[] failures; // failures in a row per station, only touched by that station
+
+    public ExponentialBackoff(int numStations) {
+        this.failures = new int[numStations];
+    }
+
+    @Override
+    public void backOff(RoutingStation station, ConveyorObj conveyor) throws InterruptedException {
+        int stationID = station.getStationID();
+        int shift = Math.min(failures[stationID]++, MAX_SHIFT);
+        station.sleepRandom((int) Math.min(station.getMaxSleepMillis(), (long) BASE_MILLIS << shift));
+    }
+
+    @Override
+    public void acquired(RoutingStation station) {
+        failures[station.getStationID()] = 0;
+    }
+
+    @Override
+    public String name() {
+        return "exponential";
+    }
+}
@@ -0,0 +1,364 @@
+package src;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+// Class for the control channel of a running threaded facility - commands are read one per line from stdin
+// (--control=stdin) or from connections to a local socket (--control=PORT, 0 picks a free port):
+//   offline S           - take station S offline: it stops before its next package group, letting go of its
+//                         conveyors, and the groups it has left go to the nearest stations still running
+//   splice S W          - add a station with W package groups after station S of the ring, on a new conveyor
+//                         between it and the station that followed S, run on the same kind of thread (--executor)
+//   service S|A-B SPEC  - give stations another service time (see ServiceTime) from their next group on
+//   status              - print the progress and what each station is doing
+//   help                - list the commands
+// Nothing is paused: a change is picked up by the station it concerns between two package groups, when it holds
+// no conveyor, and every other station goes on as before. Until the station after a splice has moved over to the
+// new conveyor, it shares its old input with the new station; the trylock and ordered strategies allow any number
+// of stations on a conveyor, and the random back-off keeps no per-station or per-conveyor table, so the control
+// channel needs those.
+public class FacilityControl {
+    static final int MAX_SPLICED = 1024; // stations (and conveyors) that can be added to a running facility
+
+    private final FacilityTopology topology;
+    private final SimulationStats stats;
+    private final CompletionTracker tracker;
+    private final ConveyorAcquisitionStrategy strategy;
+    private final BackoffPolicy backoff;
+    private final ConveyorObj[] conveyorArr; // with MAX_SPLICED free slots at the end
+    private final SplittableRandom seeds;
+    private final String conveyorKind;
+    private final String executorKind;
+    private final int maxWorkMillis;
+    private final int maxSleepMillis;
+    private final List<RoutingStation> stations = new ArrayList<>(); // by station ID
+    private final List<Integer> ring = new ArrayList<>(); // station IDs in ring order, empty unless the facility is a ring
+    private final Map<Integer, ConveyorObj> output = new HashMap<>(); // per station of the ring, its output conveyor
+    private int numConveyors;
+    private volatile ExecutorService splicedThreads; // the same kind of threads as the run's stations, made at the first splice
+    private ServerSocket server;
+    private volatile boolean closing = false;
+
+    // Method to check that the options of a run leave it open to changes while it runs
+    static void checkOptions(SimOptions options) {
+        String strategy = options.get("strategy", "trylock");
+        if (!strategy.equals("trylock") && !strategy.equals("ordered")) {
+            throw new IllegalArgumentException("--control needs the trylock or ordered strategy, not " + strategy);
+        }
+        if (!options.get("backoff", "random").equals("random")) {
+            throw new IllegalArgumentException("--control needs the random back-off, not " + options.get("backoff", ""));
+        }
+        if (options.getInt("packages", 0) > 0 || options.has("metrics") || options.has("metrics-file") || options.has("record")
+        || options.has("replay")) {
+            throw new IllegalArgumentException("--control cannot be used with --packages, --metrics, --record or --replay");
+        }
+    }
+
+    // Constructor method - the stations are added with addStation as they are created
+    public FacilityControl(FacilityTopology topology, SimOptions options, SimulationStats stats, CompletionTracker tracker,
+    ConveyorAcquisitionStrategy strategy, BackoffPolicy backoff, ConveyorObj[] conveyorArr, SplittableRandom seeds) {
+        this.topology = topology;
+        this.stats = stats;
+        this.tracker = tracker;
+        this.strategy = strategy;
+        this.backoff = backoff;
+        this.conveyorArr = conveyorArr;
+        this.seeds = seeds;
+        this.conveyorKind = options.get("conveyor", "lock");
+        this.executorKind = options.get("executor", "platform");
+        this.maxWorkMillis = options.getInt("max-work-ms", 1000);
+        this.maxSleepMillis = options.getInt("max-sleep-ms", 500);
+        this.numConveyors = topology.numConveyors();
+    }
+
+    // Method to add a station of the facility as it was built - in station order
+    public synchronized void addStation(RoutingStation station) {
+        int stationID = station.getStationID();
+        stations.add(station);
+        station.setControl(this);
+        if (topology.isRing()) {
+            ring.add(stationID);
+            output.put(stationID, conveyorArr[(stationID + 1) % topology.numStations()]);
+        }
+    }
+
+    // Method to start reading commands from stdin or a local socket, on a daemon thread
+    public void start(String channel) throws IOException {
+        Thread reader;
+        if (channel.equals("stdin")) {
+            reader = new Thread(() -> serve(new BufferedReader(new InputStreamReader(System.in)), System.out), "control-stdin");
+            System.out.println("Control channel reading commands from stdin - type help for the list");
+        } else {
+            int port;
+            try {
+                port = Integer.parseInt(channel);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("--control expects stdin or a port number, not \"" + channel + "\"");
+            }
+            server = new ServerSocket(port, 4, InetAddress.getLoopbackAddress());
+            reader = new Thread(this::acceptConnections, "control-socket");
+            System.out.println("Control channel listening on " + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort());
+        }
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Method to serve one connection to the control socket after the other
+    private void acceptConnections() {
+        while (!closing) {
+            try (Socket socket = server.accept()) {
+                serve(new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8")),
+                new PrintStream(socket.getOutputStream(), true, "UTF-8"));
+            } catch (IOException e) {
+                if (!closing) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // Method to run the commands of one channel until it is closed, answering each on the given stream
+    private void serve(BufferedReader in, PrintStream out) {
+        try {
+            String line;
+            while (!closing && (line = in.readLine()) != null) {
+                String[] tokens = line.trim().split("\\s+");
+                if (tokens[0].isEmpty()) {
+                    continue;
+                }
+                String reply;
+                try {
+                    reply = execute(tokens);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    reply = e.getMessage();
+                }
+                out.println(reply);
+                if (out != System.out) {
+                    System.out.println("Control: " + line.trim() + " - " + reply);
+                }
+            }
+        } catch (IOException e) {
+            if (!closing) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Method to carry out one command and describe what was done
+    synchronized String execute(String[] tokens) {
+        switch (tokens[0]) {
+            case "offline": {
+                expect(tokens, 2, "offline S");
+                RoutingStation station = stations.get(station(tokens[1]));
+                if (station.isOffline()) {
+                    return "S" + station.getStationID() + " is already offline";
+                }
+                if (station.getWorkload() == 0) {
+                    return "S" + station.getStationID() + " has already finished its workload";
+                }
+                station.takeOffline();
+                return "S" + station.getStationID() + " goes offline after its current package group";
+            }
+            case "splice": {
+                expect(tokens, 3, "splice S W");
+                return splice(station(tokens[1]), number(tokens[2], "W"));
+            }
+            case "service": {
+                expect(tokens, 3, "service S|A-B SPEC");
+                String[] range = tokens[1].split("-", 2);
+                int first = station(range[0]);
+                int last = range.length > 1 ? station(range[1]) : first;
+                if (last < first) {
+                    throw new IllegalArgumentException("The range " + tokens[1] + " is empty");
+                }
+                ServiceTime serviceTime = ServiceTime.parse(tokens[2]);
+                for (int s = first; s <= last; s++) {
+                    stations.get(s).setServiceTime(serviceTime);
+                }
+                return (last - first + 1) + " station(s) work with " + serviceTime.describe() + " from their next package group";
+            }
+            case "status":
+                return status();
+            case "help":
+                return "Commands: offline S | splice S W | service S|A-B SPEC | status | help";
+            default:
+                throw new IllegalArgumentException("Unknown command \"" + tokens[0] + "\" - type help for the list");
+        }
+    }
+
+    private static void expect(String[] tokens, int count, String usage) {
+        if (tokens.length != count) {
+            throw new IllegalArgumentException("Expected \"" + usage + "\"");
+        }
+    }
+
+    private int station(String token) {
+        int stationID = number(token.startsWith("S") ? token.substring(1) : token, "S");
+        if (stationID >= stations.size()) {
+            throw new IllegalArgumentException("There is no station S" + stationID + " - the stations are S0 to S" + (stations.size() - 1));
+        }
+        return stationID;
+    }
+
+    private static int number(String token, String what) {
+        try {
+            int value = Integer.parseInt(token);
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Expected a whole number of at least 0 for " + what + " but found \"" + token + "\"");
+    }
+
+    // Method to add a station after station S of the ring: S -> C -> next becomes S -> C -> new -> N -> next, and
+    // the station after S moves from C to the new conveyor N between two of its package groups
+    private String splice(int after, int groups) {
+        if (ring.isEmpty()) {
+            throw new IllegalArgumentException("Stations can only be spliced into a ring facility");
+        }
+        if (ring.size() < 2) {
+            throw new IllegalArgumentException("A ring of one station has a single conveyor to splice into");
+        }
+        if (groups < 1) {
+            throw new IllegalArgumentException("A spliced station needs at least 1 package group");
+        }
+        if (numConveyors == conveyorArr.length) {
+            throw new IllegalStateException("No room for more conveyors - at most " + MAX_SPLICED + " stations can be spliced in");
+        }
+        int position = ring.indexOf(after);
+        RoutingStation next = stations.get(ring.get((position + 1) % ring.size()));
+        ConveyorObj shared = output.get(after);
+        ConveyorObj added = ConveyorObj.create(conveyorKind, numConveyors);
+
+        int stationID = stats.addStation();
+        RoutingStation station = new RoutingStation(stationID, new ConveyorObj[] {shared}, new ConveyorObj[] {added}, groups, stats, strategy,
+        stations.get(after).getLog());
+        station.setTiming(maxWorkMillis, maxSleepMillis);
+        station.setServiceTime(stations.get(after).getServiceTime());
+        station.setRandom(seeds.split());
+        station.setBackoff(backoff);
+        station.setTracker(tracker);
+        station.setControl(this);
+        if (!tracker.addStation(groups)) {
+            throw new IllegalStateException("The run is already over");
+        }
+        if (splicedThreads == null) {
+            splicedThreads = PackageRoutingSim.createExecutor(executorKind, MAX_SPLICED);
+        }
+        conveyorArr[numConveyors++] = added;
+        stations.add(station);
+        ring.add(position + 1, stationID);
+        output.put(stationID, added);
+        next.replaceConveyor(shared, added);
+
+        splicedThreads.execute(station);
+        return "S" + stationID + " spliced in after S" + after + " with " + groups + " package group(s), on C" + shared.getID()
+        + " and the new C" + added.getID() + " to S" + next.getStationID();
+    }
+
+    // Method for a station taken offline to hand over the package groups it had left, once it has let go of its
+    // conveyors - they go to the nearest running stations on either side on a ring, or the stations sharing a
+    // conveyor with it, and to any running station when those are done
+    synchronized void handOver(RoutingStation from, int groups) {
+        int fromID = from.getStationID();
+        if (groups == 0) {
+            System.out.println("Control: S" + fromID + " is offline");
+            return;
+        }
+        List<RoutingStation> targets = neighbours(fromID);
+        StringBuilder given = new StringBuilder();
+        int left = give(targets, groups, given);
+        if (left > 0) {
+            left = give(new ArrayList<>(stations), left, given);
+        }
+        if (left > 0) {
+            tracker.addGroups(-left);
+        }
+        System.out.println("Control: S" + fromID + " is offline - " + (groups - left) + " package group(s) handed over"
+        + (given.length() > 0 ? " (" + given + ")" : "") + (left > 0 ? ", " + left + " dropped as no station is running" : ""));
+    }
+
+    // Method to share groups out evenly over the stations that still take work - returns how many nobody took
+    private int give(List<RoutingStation> targets, int groups, StringBuilder given) {
+        targets.removeIf(station -> station.isOffline() || station.getWorkload() == 0);
+        while (groups > 0 && !targets.isEmpty()) {
+            int share = groups / targets.size();
+            int extra = groups % targets.size();
+            for (Iterator<RoutingStation> it = targets.iterator(); it.hasNext(); ) {
+                RoutingStation station = it.next();
+                int count = share + (extra-- > 0 ? 1 : 0);
+                if (count == 0) {
+                    continue;
+                }
+                if (station.addWorkload(count)) {
+                    groups -= count;
+                    given.append(given.length() > 0 ? ", " : "").append(count).append(" to S").append(station.getStationID());
+                } else {
+                    it.remove(); // it finished in the meantime
+                }
+            }
+        }
+        return groups;
+    }
+
+    private List<RoutingStation> neighbours(int stationID) {
+        List<RoutingStation> found = new ArrayList<>();
+        if (!ring.isEmpty()) {
+            int position = ring.indexOf(stationID);
+            for (int direction : new int[] {1, -1}) {
+                for (int step = 1; step < ring.size(); step++) {
+                    RoutingStation station = stations.get(ring.get(Math.floorMod(position + direction * step, ring.size())));
+                    if (!station.isOffline() && station.getWorkload() > 0) {
+                        if (!found.contains(station)) {
+                            found.add(station);
+                        }
+                        break;
+                    }
+                }
+            }
+        } else {
+            for (int k = 0; k < topology.conveyorCount(stationID); k++) {
+                int conveyorID = topology.conveyor(stationID, k);
+                for (int u = 0; u < topology.userCount(conveyorID); u++) {
+                    RoutingStation station = stations.get(topology.user(conveyorID, u));
+                    if (station.getStationID() != stationID && !found.contains(station)) {
+                        found.add(station);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // Method to describe the progress and, for a small facility, every station in ring (or station) order
+    private String status() {
+        StringBuilder status = new StringBuilder(tracker.describeProgress());
+        if (stations.size() <= PackageRoutingSim.LISTED_STATIONS) {
+            List<Integer> order = new ArrayList<>(ring);
+            for (int s = 0; order.size() < stations.size(); s++) {
+                order.add(s);
+            }
+            for (int stationID : order) {
+                RoutingStation station = stations.get(stationID);
+                status.append(System.lineSeparator()).append("\tS").append(stationID).append(": ")
+                .append(station.isOffline() ? "offline" : station.getWorkload() == 0 ? "done" : station.getWorkload() + " group(s) left")
+                .append(", ").append(station.getServiceTime().describe());
+            }
+        }
+        return status.toString();
+    }
+
+    // Method to stop reading commands
+    public void close() throws IOException {
+        closing = true;
+        if (server != null) {
+            server.close();
+        }
+        if (splicedThreads != null) {
+            splicedThreads.shutdown();
+        }
+    }
+}
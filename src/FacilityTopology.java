@@ -0,0 +1,440 @@
+package src;
+import java.io.*;
+import java.util.*;
+
+// Class for the layout of a facility: which conveyors every station takes packages from (its inputs) and puts
+// packages on (its outputs), plus the station workloads and conveyor capacities. Stations may have any number of
+// input and output conveyors, so merges, splits and parallel lanes can be described, and the original ring is the
+// special case where station i takes from conveyor i and puts on conveyor (i + 1) % n.
+// The graph is kept as flat index arrays in both directions (station -> conveyors and conveyor -> stations), so a
+// facility of 100k stations is a handful of int arrays and walking a station's conveyors never allocates.
+public class FacilityTopology {
+    private final int numStations;
+    private final int numConveyors;
+    private final int[] workload;
+    private final int[] capacity; // packages per conveyor, 0 = the --conveyor-capacity default
+    private final int[] start; // station s uses conveyors[start[s]] up to conveyors[start[s + 1] - 1]
+    private final int[] numInputs; // the first numInputs[s] of those are inputs, the rest outputs
+    private final int[] conveyors;
+    private final int[] userStart; // conveyor c is used by the stations users[userStart[c]] up to users[userStart[c + 1] - 1]
+    private final int[] users;
+    private final int[] consumers; // number of stations taking packages off each conveyor
+    private final String[] service; // per-station service time specs, null when no station has its own
+    private final boolean ring;
+
+    // Constructor method - station s lists its inputs then its outputs in conveyors[start[s]..start[s + 1]), each list without repeats
+    private FacilityTopology(int numConveyors, int[] workload, int[] capacity, int[] start, int[] numInputs, int[] conveyors,
+    String[] service) {
+        this.numStations = workload.length;
+        this.numConveyors = numConveyors;
+        this.workload = workload;
+        this.capacity = capacity;
+        this.start = start;
+        this.numInputs = numInputs;
+        this.conveyors = conveyors;
+        this.service = service;
+        this.ring = false;
+
+        // Build the conveyor -> stations index by counting, then filling - a station using a conveyor as both
+        // input and output is listed once
+        this.userStart = new int[numConveyors + 1];
+        this.consumers = new int[numConveyors];
+        for (int s = 0; s < numStations; s++) {
+            for (int k = start[s]; k < start[s + 1]; k++) {
+                if (k - start[s] < numInputs[s]) {
+                    consumers[conveyors[k]]++;
+                }
+                if (!usedEarlier(s, k)) {
+                    userStart[conveyors[k] + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < numConveyors; c++) {
+            userStart[c + 1] += userStart[c];
+        }
+        this.users = new int[userStart[numConveyors]];
+        int[] filled = new int[numConveyors];
+        for (int s = 0; s < numStations; s++) {
+            for (int k = start[s]; k < start[s + 1]; k++) {
+                if (!usedEarlier(s, k)) {
+                    users[userStart[conveyors[k]] + filled[conveyors[k]]++] = s;
+                }
+            }
+        }
+    }
+
+    private boolean usedEarlier(int stationID, int k) {
+        for (int j = start[stationID]; j < k; j++) {
+            if (conveyors[j] == conveyors[k]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Constructor method for the ring - the conveyor -> stations index is written straight out, as conveyor c is
+    // only used by station c and the station before it, which keeps loading a 10M-station config fast
+    private FacilityTopology(WorkloadSource workloads) {
+        int n = workloads.numStations();
+        this.numStations = n;
+        this.numConveyors = n;
+        this.workload = new int[n];
+        this.capacity = new int[n];
+        this.start = new int[n + 1];
+        this.numInputs = new int[n];
+        this.conveyors = new int[2 * n];
+        this.userStart = new int[n + 1];
+        this.users = new int[n == 1 ? 1 : 2 * n];
+        this.consumers = new int[n];
+        this.service = null;
+        this.ring = true;
+        for (int i = 0; i < n; i++) {
+            workload[i] = workloads.workload(i);
+            start[i + 1] = 2 * (i + 1);
+            numInputs[i] = 1;
+            conveyors[2 * i] = i;
+            conveyors[2 * i + 1] = (i + 1) % n;
+            consumers[i] = 1;
+            userStart[i + 1] = (n == 1) ? 1 : 2 * (i + 1);
+            if (n > 1) {
+                users[2 * i] = (i == 0) ? 0 : i - 1; // users are listed by ascending station ID
+                users[2 * i + 1] = (i == 0) ? n - 1 : i;
+            }
+        }
+    }
+
+    // Method to build the original ring from a config.txt workload list - station i takes from conveyor i and puts on (i + 1) % n
+    public static FacilityTopology ring(WorkloadSource workloads) {
+        return new FacilityTopology(workloads);
+    }
+
+    // Method to read a topology file. Blank lines and everything after a # are ignored, the rest are:
+    //   stations N                                   - must come before the station lines
+    //   conveyors M                                  - must come before the station and conveyor lines
+    //   station ID workload W in C C ... out C C ... - every station once; either list may be left out, not both,
+    //     [service SPEC]                               and an optional ServiceTime spec for the station's work
+    //   conveyor ID capacity K                       - optional, overrides --conveyor-capacity for that conveyor
+    public static FacilityTopology read(String path) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(path), 1 << 16)) {
+            Parser parser = new Parser(path);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                parser.parseLine(line);
+            }
+            return parser.build();
+        }
+    }
+
+    // Class for reading the topology file one line at a time into growing flat arrays
+    private static final class Parser {
+        private final String path;
+        private int lineNumber = 0;
+        private int numStations = -1;
+        private int numConveyors = -1;
+        private int[] workload;
+        private int[] capacity;
+        private int[] firstOf; // index of each station's run in the lists below, -1 until its line is read
+        private int[] lengthOf;
+        private int[] inputsOf;
+        private String[] service; // allocated by the first station with a service time
+        private final Map<String, String> checked = new HashMap<>(); // service specs parsed so far, so stations share one copy
+        private int[] list = new int[1024];
+        private int listSize = 0;
+
+        Parser(String path) {
+            this.path = path;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(path + ":" + lineNumber + ": " + message);
+        }
+
+        private int number(String token, String what) {
+            try {
+                return Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw error("expected " + what + " but found \"" + token + "\"");
+            }
+        }
+
+        private int id(String token, int limit, String what) {
+            int id = number(token, what + " ID");
+            if (id < 0 || id >= limit) {
+                throw error(what + " " + id + " is out of range - expected 0 to " + (limit - 1));
+            }
+            return id;
+        }
+
+        void parseLine(String line) {
+            lineNumber++;
+            int hash = line.indexOf('#');
+            String[] tokens = (hash >= 0 ? line.substring(0, hash) : line).trim().split("\\s+");
+            if (tokens[0].isEmpty()) {
+                return;
+            }
+            switch (tokens[0]) {
+                case "stations":
+                    expect(tokens, 2, "stations N");
+                    if (numStations >= 0) {
+                        throw error("the number of stations is given twice");
+                    }
+                    numStations = number(tokens[1], "the number of stations");
+                    if (numStations < 1) {
+                        throw error("a facility needs at least 1 station");
+                    }
+                    workload = new int[numStations];
+                    firstOf = new int[numStations];
+                    lengthOf = new int[numStations];
+                    inputsOf = new int[numStations];
+                    Arrays.fill(firstOf, -1);
+                    break;
+                case "conveyors":
+                    expect(tokens, 2, "conveyors M");
+                    if (numConveyors >= 0) {
+                        throw error("the number of conveyors is given twice");
+                    }
+                    numConveyors = number(tokens[1], "the number of conveyors");
+                    if (numConveyors < 1) {
+                        throw error("a facility needs at least 1 conveyor");
+                    }
+                    capacity = new int[numConveyors];
+                    break;
+                case "conveyor":
+                    expect(tokens, 4, "conveyor ID capacity K");
+                    requireCounts();
+                    int conveyorID = id(tokens[1], numConveyors, "conveyor");
+                    if (!tokens[2].equals("capacity")) {
+                        throw error("expected \"capacity\" but found \"" + tokens[2] + "\"");
+                    }
+                    capacity[conveyorID] = number(tokens[3], "a capacity");
+                    if (capacity[conveyorID] < 1) {
+                        throw error("conveyor C" + conveyorID + " needs a capacity of at least 1 package");
+                    }
+                    break;
+                case "station":
+                    parseStation(tokens);
+                    break;
+                default:
+                    throw error("unknown line \"" + tokens[0] + "\" - expected stations, conveyors, station or conveyor");
+            }
+        }
+
+        private void expect(String[] tokens, int count, String form) {
+            if (tokens.length != count) {
+                throw error("expected \"" + form + "\"");
+            }
+        }
+
+        private void requireCounts() {
+            if (numStations < 0 || numConveyors < 0) {
+                throw error("the \"stations N\" and \"conveyors M\" lines must come first");
+            }
+        }
+
+        // Method to read "station ID workload W in C C ... out C C ... service SPEC" into the lists
+        private void parseStation(String[] tokens) {
+            requireCounts();
+            if (tokens.length < 4 || !tokens[2].equals("workload")) {
+                throw error("expected \"station ID workload W in C ... out C ... [service SPEC]\"");
+            }
+            int stationID = id(tokens[1], numStations, "station");
+            if (firstOf[stationID] >= 0) {
+                throw error("station S" + stationID + " is described twice");
+            }
+            workload[stationID] = number(tokens[3], "a workload");
+            if (workload[stationID] < 0) {
+                throw error("station S" + stationID + " has a negative workload");
+            }
+
+            int first = listSize;
+            int inputs = 0;
+            int section = 0; // 1 while reading inputs, 2 while reading outputs
+            for (int t = 4; t < tokens.length; t++) {
+                if (tokens[t].equals("service")) {
+                    if (t != tokens.length - 2) {
+                        throw error("\"service\" must come last and be followed by one spec");
+                    }
+                    parseService(stationID, tokens[t + 1]);
+                    break;
+                }
+                if (tokens[t].equals("in") || tokens[t].equals("out")) {
+                    int next = tokens[t].equals("in") ? 1 : 2;
+                    if (next <= section) {
+                        throw error("\"in\" must come before \"out\" and each only once");
+                    }
+                    section = next;
+                    continue;
+                }
+                if (section == 0) {
+                    throw error("expected \"in\" or \"out\" but found \"" + tokens[t] + "\"");
+                }
+                int conveyorID = id(tokens[t], numConveyors, "conveyor");
+                int sectionStart = (section == 1) ? first : first + inputs;
+                for (int j = sectionStart; j < listSize; j++) {
+                    if (list[j] == conveyorID) {
+                        throw error("conveyor C" + conveyorID + " is listed twice for station S" + stationID);
+                    }
+                }
+                if (listSize == list.length) {
+                    list = Arrays.copyOf(list, list.length * 2);
+                }
+                list[listSize++] = conveyorID;
+                if (section == 1) {
+                    inputs++;
+                }
+            }
+            if (listSize == first) {
+                throw error("station S" + stationID + " needs at least one input or output conveyor");
+            }
+            firstOf[stationID] = first;
+            lengthOf[stationID] = listSize - first;
+            inputsOf[stationID] = inputs;
+        }
+
+        // Method to check a station's service time spec and keep it - each distinct spec is only parsed once
+        private void parseService(int stationID, String spec) {
+            String known = checked.get(spec);
+            if (known == null) {
+                try {
+                    ServiceTime.parse(spec);
+                } catch (IllegalArgumentException e) {
+                    throw error(e.getMessage());
+                }
+                checked.put(spec, spec);
+                known = spec;
+            }
+            if (service == null) {
+                service = new String[numStations];
+            }
+            service[stationID] = known;
+        }
+
+        // Method to check every station was described and lay the lists out in station order
+        FacilityTopology build() {
+            if (numStations < 0 || numConveyors < 0) {
+                throw new IllegalArgumentException(path + ": the \"stations N\" and \"conveyors M\" lines are missing");
+            }
+            int[] start = new int[numStations + 1];
+            for (int s = 0; s < numStations; s++) {
+                if (firstOf[s] < 0) {
+                    throw new IllegalArgumentException(path + ": station S" + s + " is never described");
+                }
+                start[s + 1] = start[s] + lengthOf[s];
+            }
+            int[] conveyors = new int[listSize];
+            for (int s = 0; s < numStations; s++) {
+                System.arraycopy(list, firstOf[s], conveyors, start[s], lengthOf[s]);
+            }
+            return new FacilityTopology(numConveyors, workload, capacity, start, inputsOf, conveyors, service);
+        }
+    }
+
+    public int numStations() {
+        return numStations;
+    }
+
+    public int numConveyors() {
+        return numConveyors;
+    }
+
+    // True when this is the original ring read from a config.txt workload list
+    public boolean isRing() {
+        return ring;
+    }
+
+    public int workload(int stationID) {
+        return workload[stationID];
+    }
+
+    // Package capacity of a conveyor, 0 when the topology leaves it to --conveyor-capacity
+    public int capacity(int conveyorID) {
+        return capacity[conveyorID];
+    }
+
+    // True when some station of a topology file has its own service time
+    public boolean hasServiceSpecs() {
+        return service != null;
+    }
+
+    // Method to get a station's own service time spec, or null when it uses the run's default
+    public String serviceSpec(int stationID) {
+        return service == null ? null : service[stationID];
+    }
+
+    // Method to get an upper bound on how many stations can hold all of their conveyors at the same time - floor(n / 2)
+    // on the ring; on other layouts the number of groups in a greedy cover of the stations by groups that share a
+    // conveyor, as at most one station of such a group can work at a time
+    public int concurrencyBound() {
+        if (ring) {
+            return Math.max(1, numStations / 2);
+        }
+        boolean[] covered = new boolean[numStations];
+        int groups = 0;
+        for (int s = 0; s < numStations; s++) {
+            if (covered[s]) {
+                continue;
+            }
+            int best = -1;
+            int bestCount = 0;
+            for (int k = start[s]; k < start[s + 1]; k++) {
+                int count = 0;
+                for (int u = userStart[conveyors[k]]; u < userStart[conveyors[k] + 1]; u++) {
+                    if (!covered[users[u]]) {
+                        count++;
+                    }
+                }
+                if (count > bestCount) {
+                    best = conveyors[k];
+                    bestCount = count;
+                }
+            }
+            for (int u = userStart[best]; u < userStart[best + 1]; u++) {
+                covered[users[u]] = true;
+            }
+            groups++;
+        }
+        return groups;
+    }
+
+    // Number of conveyors a station uses - its inputs first, then its outputs (a conveyor can be both)
+    public int conveyorCount(int stationID) {
+        return start[stationID + 1] - start[stationID];
+    }
+
+    public int inputCount(int stationID) {
+        return numInputs[stationID];
+    }
+
+    // Method to get the k-th conveyor of a station, counting its inputs first
+    public int conveyor(int stationID, int k) {
+        return conveyors[start[stationID] + k];
+    }
+
+    // Number of different stations using a conveyor
+    public int userCount(int conveyorID) {
+        return userStart[conveyorID + 1] - userStart[conveyorID];
+    }
+
+    public int user(int conveyorID, int k) {
+        return users[userStart[conveyorID] + k];
+    }
+
+    // Number of stations taking packages off a conveyor - 0 for a conveyor leading out of the facility
+    public int consumerCount(int conveyorID) {
+        return consumers[conveyorID];
+    }
+
+    // Method to describe a station's conveyors for the configuration listing, e.g. "in C0 C1, out C2"
+    public String describe(int stationID) {
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < conveyorCount(stationID); k++) {
+            if (k == 0 && inputCount(stationID) > 0) {
+                text.append("in");
+            } else if (k == inputCount(stationID)) {
+                text.append(k == 0 ? "out" : ", out");
+            }
+            text.append(" C").append(conveyor(stationID, k));
+        }
+        return text.toString();
+    }
+}
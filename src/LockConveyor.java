@@ -0,0 +1,47 @@
+package src;
+import java.util.concurrent.locks.*;
+
+// Class for the original conveyor, guarded by a ReentrantLock with the holding station kept next to it.
+// The lock is a ReentrantLock rather than a synchronized block so that a station running on a virtual thread
+// does not pin its carrier thread while it holds or waits for a conveyor.
+public class LockConveyor extends ConveyorObj {
+    private final ReentrantLock conveyorLock = new ReentrantLock();
+    private volatile int lockedBy = FREE;
+
+    // Constructor method - build a conveyor object instance
+    public LockConveyor(int conveyorID) {
+        super(conveyorID);
+    }
+
+    // Method to get the ID of the station that holds the lock - read separately from the lock, so it can be
+    // momentarily behind, but it is cleared before the lock is released and never names a station that let go
+    @Override
+    public int getLockedBy() {
+        return lockedBy;
+    }
+
+    @Override
+    public boolean lockConveyor(int stationID) {
+        if (conveyorLock.tryLock()) {
+            lockedBy = stationID;
+            return true;
+        }
+        else{
+            return false;
+        }
+    }
+
+    @Override
+    public void lockConveyorBlocking(int stationID) {
+        conveyorLock.lock();
+        lockedBy = stationID;
+    }
+
+    @Override
+    public void unlockConveyor() {
+        if (conveyorLock.getHoldCount() == 1) {
+            lockedBy = FREE;
+        }
+        conveyorLock.unlock();
+    }
+}
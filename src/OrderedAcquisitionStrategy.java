@@ -0,0 +1,32 @@
+package src;
+
+// Strategy for global resource ordering: every station locks its conveyors by ascending ID and waits on each lock
+// instead of backing off. Since no station ever waits for a lower conveyor while holding a higher one, no cycle
+// of waiting stations can form in any topology, and a station waits in the queue of the conveyor lock instead of
+// polling it.
+public class OrderedAcquisitionStrategy implements ConveyorAcquisitionStrategy {
+
+    @Override
+    public void acquire(RoutingStation station) {
+        for (ConveyorObj conveyor : station.getLockOrder()) {
+            lockInOrder(station, conveyor);
+        }
+        for (int k = 0; k < station.getConveyors().length; k++) {
+            station.recordLocked(k);
+        }
+    }
+
+    // Method to take one conveyor lock, counting a retry when the station has to wait for it
+    private void lockInOrder(RoutingStation station, ConveyorObj conveyor) {
+        int stationID = station.getStationID();
+        if (!conveyor.lockConveyor(stationID)) {
+            station.recordFailedAttempt();
+            conveyor.lockConveyorBlocking(stationID);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "ordered";
+    }
+}
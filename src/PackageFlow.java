@@ -0,0 +1,127 @@
+package src;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// Class for the package-flow model. Working a package group now moves real packages: the station takes every
+// package off its input conveyors (delivering them - they have arrived) and puts a group of new packages of its own
+// on its output conveyors, spread over them in turn when it has several. When the outputs are full the station puts
+// on what fits and the group stays unfinished (backpressure) until the next stations have taken packages off. A
+// station going offline empties its inputs one last time and marks them, so later packages sent to a conveyor
+// nobody takes from any more - or to one leading out of the facility - are counted as sunk instead of blocking forever.
+public class PackageFlow {
+    private final FacilityTopology topology;
+    private final PackageQueue[] queues; // one per conveyor
+    private final int groupSize;
+    private final int[] pending; // packages of the current group not yet on an output conveyor, per station
+    private final int[] nextOutput; // per station, the output the next package is offered to first
+    private final long[] nextSequence; // per station, for package IDs (origin << 32 | sequence)
+    private final LatencyHistogram transit = new LatencyHistogram();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder sunk = new LongAdder();
+    private final LongAdder blockedGroups = new LongAdder();
+
+    // Constructor method - groupSize packages are put on the output conveyors per package group, and every
+    // conveyor gets a queue of its topology capacity or defaultCapacity, all preallocated up front
+    public PackageFlow(FacilityTopology topology, int groupSize, int defaultCapacity) {
+        if (groupSize < 1) {
+            throw new IllegalArgumentException("A package group needs at least 1 package");
+        }
+        this.topology = topology;
+        this.groupSize = groupSize;
+        this.pending = new int[topology.numStations()];
+        this.nextOutput = new int[topology.numStations()];
+        this.nextSequence = new long[topology.numStations()];
+        this.queues = new PackageQueue[topology.numConveyors()];
+        for (int c = 0; c < queues.length; c++) {
+            queues[c] = new PackageQueue(topology.capacity(c) > 0 ? topology.capacity(c) : defaultCapacity);
+            queues[c].setConsumers(topology.consumerCount(c));
+        }
+        for (int s = 0; s < topology.numStations(); s++) {
+            if (topology.workload(s) == 0) {
+                stationOffline(s, 0); // a station with nothing to do never takes packages off
+            }
+        }
+    }
+
+    // Method for a station holding all of its conveyors to move a package group - returns false if the output
+    // conveyors were too full to take the whole group, in which case the rest is kept for the station's next attempt
+    public boolean moveGroup(int stationID, long now) {
+        int inputs = topology.inputCount(stationID);
+        int outputs = topology.conveyorCount(stationID) - inputs;
+        for (int k = 0; k < inputs; k++) {
+            PackageQueue input = queues[topology.conveyor(stationID, k)];
+            input.sampleOccupancy();
+            delivered.add(input.drain(now, transit));
+        }
+        if (outputs == 0) {
+            return true; // a station at the end of the line only takes packages off
+        }
+
+        if (pending[stationID] == 0) {
+            pending[stationID] = groupSize;
+        }
+        int full = 0; // outputs found full since a package was last put on
+        while (pending[stationID] > 0 && full < outputs) {
+            PackageQueue output = queues[topology.conveyor(stationID, inputs + nextOutput[stationID])];
+            nextOutput[stationID] = (nextOutput[stationID] + 1) % outputs;
+            if (output.isConsumerOffline()) {
+                sunk.increment();
+            } else if (output.offer(((long) stationID << 32) | nextSequence[stationID], stationID, now)) {
+                nextSequence[stationID]++;
+            } else {
+                full++;
+                continue;
+            }
+            pending[stationID]--;
+            full = 0;
+        }
+        for (int k = inputs; k < inputs + outputs; k++) {
+            queues[topology.conveyor(stationID, k)].sampleOccupancy();
+        }
+        if (pending[stationID] > 0) {
+            blockedGroups.increment();
+            return false;
+        }
+        return true;
+    }
+
+    // Method for a station going offline, while still holding its input conveyors
+    public void stationOffline(int stationID, long now) {
+        for (int k = 0; k < topology.inputCount(stationID); k++) {
+            PackageQueue input = queues[topology.conveyor(stationID, k)];
+            delivered.add(input.drain(now, transit));
+            input.consumerOffline();
+        }
+    }
+
+    public LatencyHistogram getTransit() {
+        return transit;
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    // Method to print the package-flow part of the run summary
+    public void print() {
+        long queued = 0;
+        int maxOccupancy = 0;
+        double meanOccupancy = 0;
+        for (PackageQueue queue : queues) {
+            queued += queue.size();
+            maxOccupancy = Math.max(maxOccupancy, queue.getMaxOccupancy());
+            meanOccupancy += queue.getMeanOccupancy();
+        }
+        System.out.println("\nPackage Flow (" + groupSize + " packages per group, conveyor capacity " + queues[0].capacity() + "):");
+        System.out.println("\tDelivered: " + delivered.sum() + ", sunk at offline stations or facility exits: " + sunk.sum()
+        + ", still on conveyors: " + queued);
+        System.out.println("\tPackage groups held up by full output conveyors: " + blockedGroups.sum());
+        System.out.println("\tTransit time: " + transit.summaryMillis());
+        System.out.printf(Locale.ROOT, "\tConveyor occupancy: mean %.2f, max %d packages%n", meanOccupancy / queues.length, maxOccupancy);
+        if (queues.length <= 32) {
+            for (int c = 0; c < queues.length; c++) {
+                System.out.printf(Locale.ROOT, "\t\tConveyor C%d: mean %.2f, max %d%n", c, queues[c].getMeanOccupancy(), queues[c].getMaxOccupancy());
+            }
+        }
+    }
+}
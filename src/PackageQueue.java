@@ -0,0 +1,88 @@
+package src;
+
+// Class for the packages riding on one conveyor - a bounded FIFO of package records (ID, origin station, time put
+// on the conveyor) kept in preallocated primitive arrays used as a ring buffer, so moving packages never allocates.
+// Only the station currently holding the conveyor touches its queue; the conveyor lock orders those accesses.
+public class PackageQueue {
+    private final long[] ids;
+    private final int[] origins;
+    private final long[] enqueuedAt;
+    private int head = 0;
+    private int size = 0;
+    private int consumers = 1; // stations still taking packages off this conveyor
+    private int maxOccupancy = 0;
+    private long occupancySum = 0;
+    private long occupancySamples = 0;
+
+    // Constructor method - capacity is the number of packages that fit on the conveyor
+    public PackageQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Conveyor capacity must be at least 1 package");
+        }
+        this.ids = new long[capacity];
+        this.origins = new int[capacity];
+        this.enqueuedAt = new long[capacity];
+    }
+
+    public int capacity() {
+        return ids.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Method to put a package on the conveyor - returns false when the conveyor is full
+    public boolean offer(long packageID, int origin, long now) {
+        if (size == ids.length) {
+            return false;
+        }
+        int slot = (head + size) % ids.length;
+        ids[slot] = packageID;
+        origins[slot] = origin;
+        enqueuedAt[slot] = now;
+        size++;
+        return true;
+    }
+
+    // Method to take every package off the conveyor, recording how long each one rode it
+    public int drain(long now, LatencyHistogram transit) {
+        int drained = size;
+        for (int i = 0; i < drained; i++) {
+            transit.record(now - enqueuedAt[(head + i) % ids.length]);
+        }
+        head = (head + drained) % ids.length;
+        size = 0;
+        return drained;
+    }
+
+    // Method to sample how full the conveyor is, called each time a station works on it
+    public void sampleOccupancy() {
+        maxOccupancy = Math.max(maxOccupancy, size);
+        occupancySum += size;
+        occupancySamples++;
+    }
+
+    // Method to set how many stations take packages off this conveyor - 0 for a conveyor leading out of the facility
+    public void setConsumers(int consumers) {
+        this.consumers = consumers;
+    }
+
+    // Method to mark that one of the stations taking packages off this conveyor has gone offline
+    public void consumerOffline() {
+        consumers--;
+    }
+
+    // True once no station takes packages off this conveyor any more
+    public boolean isConsumerOffline() {
+        return consumers <= 0;
+    }
+
+    public int getMaxOccupancy() {
+        return maxOccupancy;
+    }
+
+    public double getMeanOccupancy() {
+        return occupancySamples == 0 ? 0 : occupancySum / (double) occupancySamples;
+    }
+}
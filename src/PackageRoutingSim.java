@@ -6,67 +6,507 @@ import java.util.concurrent.*;
 
 
 // Main function that controls the flow of the program
+// Usage: PackageRoutingSim [--mode=threaded|virtual|stepped|sweep|shard] [--config=config.txt] [--executor=platform|virtual]
+//                          [--strategy=trylock|ordered|token|arbiter|batch] [--log=full|progress|off] [--log-file=path]
+//                          [--max-work-ms=1000] [--max-sleep-ms=500] [--conveyor=lock|atomic|atomic-park]
+//                          [--packages=G [--conveyor-capacity=C]]
+//                          [--metrics [--metrics-file=path --metrics-format=csv|json --metrics-interval-ms=1000]]
+//                          [--stations=N --max-workload=M --seed=S] [--write-config=path] [--topology=path]
+//                          [--run-mode=virtual|threaded --runs=R --parallelism=P --sweep-file=path]
+//                          [--record=path | --replay=path] [--shards=K] [--backoff=random|exponential|adaptive|park]
+//                          [--service=SPEC] [--service-file=path]
+//                          [--checkpoint=path --checkpoint-every-ms=T] [--resume=path --resume-from=K --fork=F]
+//                          [--stall-ms=W --on-stall=report|drain|abort] [--max-run-ms=T --drain-ms=D] [--progress-ms=P]
+//                          [--control=stdin|PORT]
+//   threaded - one thread per routing station, timing done with real sleeps (default)
+//   virtual  - discrete-event run of the same ring on a virtual clock, finishes without sleeping
+//   stepped  - the virtual clock on flat per-station arrays, stepped by --parallelism worker threads (default
+//              one per core) for facilities of millions of stations
+//   sweep    - runs every combination of the options given as comma separated lists (--stations=10,100), --runs
+//              times each with the next seed, in parallel in --run-mode (default virtual), one CSV row per run
+//   shard    - splits the facility over --shards worker processes (default 2) that lease boundary conveyors
+//              to each other over local sockets, with this process coordinating them
+//   --strategy picks how a threaded station gets hold of its two conveyors (default trylock, the original loop);
+//             batch has a scheduler thread grant non-conflicting stations in batches
+//   --log sets how much of the station narrative is written (default full), --log-file sends it to a file
+//   --max-work-ms and --max-sleep-ms bound the random work and back-off times (0 makes them free)
+//   --service replaces the uniform work time with another distribution (see ServiceTime), --service-file gives
+//             stations their own, as lines "S SPEC" or "A-B SPEC"
+//   --backoff picks how a station backs off after a failed attempt: a random sleep (default), exponential with
+//             jitter, adaptive to each conveyor's failure rate, or parked until the taken conveyor is released
+//   --conveyor picks the conveyor lock: ReentrantLock (default) or a CAS-updated owner word that spins then parks
+//   --packages moves G real packages per package group over conveyors holding C packages (default 4 groups)
+//   --metrics collects live metrics, readable over JMX (src:type=SimMetrics) and dumped periodically to --metrics-file
+//   --seed makes the work and sleep times repeatable (a threaded run without one picks a seed and prints it),
+//   --stations generates a facility of N stations instead of reading the config file,
+//   --write-config streams the configured facility out in the config.txt format (binary for a .bin path) and exits
+//   --topology reads a facility graph (merges, splits, parallel lanes) instead of the config.txt ring
+//   --record writes every conveyor lock and unlock and every work and sleep time of a threaded run to a binary trace,
+//   --replay runs a trace again with exactly the recorded interleaving, on the facility it was recorded on
+//   --checkpoint writes the state of a virtual run every T ms of virtual time (default 60000) to a snapshot file,
+//   --resume goes on from checkpoint K of one (default the last), or runs F diverging branches from it with --fork
+//   --stall-ms reports a threaded run in which no package group was completed for W ms (default 30000) with every
+//             conveyor's owner, and --on-stall can drain or abort it; --max-run-ms drains a run after T ms, and a
+//             drain is aborted after --drain-ms (see CompletionTracker); --progress-ms prints the progress every P ms
+//   --control reads commands for the running facility from stdin or a local socket: take a station offline,
+//             splice a station into the ring, change service times (see FacilityControl)
 public class PackageRoutingSim {
-    static int MAX_STATIONS = 10; // maximum number of routing stations and conveyors that can be configured
+    static int LISTED_STATIONS = 32; // facilities larger than this are not listed station by station
+    static final int MAX_PLATFORM_THREADS = 10_000; // stations a threaded run on platform threads may start, one OS thread each
 
     public static void main(String args[]) {
         try {
-            // Array list to store the integers from config.txt
-            List<Integer> configFile = new ArrayList<>();
+            SimOptions options = new SimOptions(args);
+            String mode = options.get("mode", "threaded");
+            if (options.has("control")) {
+                if (!mode.equals("threaded")) {
+                    throw new IllegalArgumentException("--control only works in the threaded mode");
+                }
+                FacilityControl.checkOptions(options);
+            }
+            if ((options.has("checkpoint") || options.has("resume")) && !mode.equals("virtual")) {
+                throw new IllegalArgumentException("--checkpoint and --resume only work in the virtual mode - the other modes have no single clock to stop at");
+            }
+            if (mode.equals("sweep")) {
+                runSweep(options);
+                return;
+            }
 
-            // Create thread pool of MAX size
-            ExecutorService threadController = Executors.newFixedThreadPool(MAX_STATIONS);
+            // A replay runs with the seed, strategy, timing and package options it was recorded with, and a
+            // threaded run always has a seed, so it can be run again
+            SimTrace trace = null;
+            if (options.has("replay")) {
+                if (!mode.equals("threaded")) {
+                    throw new IllegalArgumentException("--replay only works in the threaded mode - a virtual run is repeated by its --seed");
+                }
+                trace = SimTrace.replay(options.get("replay", "trace.bin"));
+                options = trace.replayOptions(options);
+            } else if ((mode.equals("threaded") || mode.equals("shard")) && !options.has("seed")) {
+                options = options.with("seed", Long.toString(new SplittableRandom().nextLong()));
+            }
 
-            // Read config.txt file into the config array
-            try (BufferedReader reader = new BufferedReader(new FileReader("config.txt"))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    configFile.add(Integer.parseInt(line.trim()));
+            // The facility is either a topology file or the original ring, from config.txt or generated
+            WorkloadSource workloads = null;
+            FacilityTopology topology;
+            if (options.has("topology")) {
+                topology = FacilityTopology.read(options.get("topology", "topology.txt"));
+            } else {
+                if (options.has("stations")) {
+                    workloads = WorkloadSource.generated(options.getInt("stations", 0), options.getInt("max-workload", 10),
+                    options.getLong("seed", 0));
+                } else {
+                    workloads = WorkloadSource.of(ConfigFile.read(options.get("config", "config.txt")));
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+                topology = FacilityTopology.ring(workloads);
             }
 
-            // Close configuration file - we're all done with it.
-            // No explicit close needed here as it's handled by try-with-resources
+            if (options.has("write-config")) {
+                if (workloads == null) {
+                    throw new IllegalArgumentException("--write-config writes the config.txt ring format and cannot be used with --topology");
+                }
+                ConfigFile.write(workloads, options.get("write-config", "config.txt"));
+                System.out.println("Wrote " + workloads.numStations() + " stations to " + options.get("write-config", "config.txt"));
+            } else if (mode.equals("virtual")) {
+                runVirtual(topology, options);
+            } else if (mode.equals("stepped")) {
+                runStepped(topology, options);
+            } else if (mode.equals("threaded")) {
+                if (options.has("record")) {
+                    trace = SimTrace.record(options.get("record", "trace.bin"), topology, options);
+                }
+                runThreaded(topology, options, trace);
+            } else if (mode.equals("shard")) {
+                ShardCoordinator.run(topology, options);
+            } else if (mode.equals("shard-worker")) {
+                new ShardWorker(topology, options).run();
+            } else {
+                System.out.println("Unknown mode \"" + mode + "\" - expected threaded, virtual, stepped, sweep or shard");
+            }
 
-            // Save the first integer in the config.txt file as the number of routing stations in the simulation run
-            int numStations = configFile.get(0);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
 
-            // Outputing the input file
-            System.out.println("Configuration/Input:");
-            System.out.println("\tNumber of Stations: " + numStations);
+    // Method to create the thread pool for the stations - every station gets its own thread so none of them is
+    // queued behind another. Virtual threads are used when asked for and the running Java supports them (21+).
+    // Platform threads are OS threads, so a facility too large for them is turned away rather than left to run out
+    // of memory or hit the process limit part way through starting its stations.
+    static ExecutorService createExecutor(String executor, int numStations) {
+        if (executor.equals("virtual")) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads need Java 21 or newer - falling back to platform threads");
+            }
+        } else if (!executor.equals("platform")) {
+            throw new IllegalArgumentException("Unknown executor \"" + executor + "\" - expected platform or virtual");
+        }
+        if (numStations > MAX_PLATFORM_THREADS) {
+            throw new IllegalArgumentException(numStations + " stations would need " + numStations + " platform threads, more than the "
+            + MAX_PLATFORM_THREADS + " a threaded run starts - use --executor=virtual on Java 21 or newer, or --mode=virtual or --mode=stepped");
+        }
+        return Executors.newFixedThreadPool(numStations);
+    }
+
+    // Method to run the simulation with one thread per routing station and real sleeps, recorded to or replayed
+    // from the trace when there is one
+    static void runThreaded(FacilityTopology topology, SimOptions options, SimTrace trace) throws InterruptedException, IOException {
+        int numStations = topology.numStations();
+        if (trace != null && trace.isReplaying()) {
+            trace.checkFacility(topology);
+        }
+        ConveyorAcquisitionStrategy strategy = ConveyorAcquisitionStrategy.create(options.get("strategy", "trylock"), topology);
+        ServiceTimes services = ServiceTimes.create(topology, options);
+        int logLevel = EventLog.parseLevel(options.get("log", "full"));
+        String logFile = options.get("log-file", null);
+        PrintStream logStream = (logFile == null) ? System.out : new PrintStream(new FileOutputStream(logFile), false);
+
+        // Outputing the input file
+        printConfiguration(topology);
+        System.out.println("\nSeed: " + options.getLong("seed", 0) + (trace == null ? "" : trace.isReplaying()
+        ? " (replaying " + trace.numEvents() + " events from " + options.get("replay", "") + ")" : " (recording to " + options.get("record", "") + ")"));
+        System.out.println("Service times: " + (trace != null && trace.isReplaying() ? trace.serviceTimes() + " (as recorded)" : services.describe()));
 
-            for (int i = 0; i < numStations; i++){
-                System.out.println("\tStation " + (i + 1) + ": " + configFile.get(i + 1) + " package(s)");
+        System.out.println("\n*** PACKAGE MANAGEMENT FACILITY SIMULATION BEGINS *** \n");
+        EventLog log = new EventLog(logLevel, logStream);
+
+        // Give every conveyor a package queue when the run moves real packages
+        PackageFlow packageFlow = createPackageFlow(options, topology);
+
+        SimulationStats stats = SimulationStats.forThreads(numStations, options.has("control") ? FacilityControl.MAX_SPLICED : 0);
+        SimMetrics metrics = null;
+        if (options.has("metrics") || options.has("metrics-file")) {
+            metrics = new SimMetrics(topology, stats);
+            metrics.registerMBean();
+            if (options.has("metrics-file")) {
+                metrics.startSnapshots(options.get("metrics-file", "metrics.csv"), options.get("metrics-format", "csv"),
+                options.getLong("metrics-interval-ms", 1000));
+            }
+        }
+        CompletionTracker tracker;
+        try {
+            tracker = runStations(topology, options, services, strategy, stats, packageFlow, metrics, trace, log);
+        } finally {
+            if (trace != null) {
+                trace.close();
             }
+        }
 
-            System.out.println("\n*** PACKAGE MANAGEMENT FACILITY SIMULATION BEGINS *** \n");
+        // Application shutdown
+        if (metrics != null) {
+            metrics.stop();
+        }
+        log.close();
+        if (logStream != System.out) {
+            logStream.close();
+        }
 
-            // Create an array of ConveyorV1 objects
-            ConveyorObj[] conveyorArr = new ConveyorObj[numStations];
-            for (int i = 0; i < numStations; i++) {
-                conveyorArr[i] = new ConveyorObj(i);
+        if (tracker.isComplete()) {
+            System.out.println("\n*** ALL WORKLOAD COMPLETED - SIMULATION IS SHUTTING DOWN ***");
+        } else {
+            System.out.println("\n*** SIMULATION STOPPED (" + tracker.getStopReason() + ") WITH " + tracker.completedGroups() + " OF "
+            + tracker.totalGroups() + " PACKAGE GROUPS COMPLETED ***");
+        }
+        System.out.println("*** THE PACKAGE MANAGEMENT FACILITY SIMULATION HAS ENDED ***");
+        stats.print("wall clock, " + strategy.name() + " strategy, " + options.get("backoff", "random") + " back-off");
+        if (strategy.summary() != null) {
+            System.out.println("\t" + strategy.summary());
+        }
+        if (packageFlow != null) {
+            packageFlow.print();
+        }
+        if (metrics != null) {
+            metrics.print();
+        }
+        if (trace != null) {
+            if (trace.isReplaying() && tracker.isStopping()) {
+                System.out.println("\nReplay stopped early - the trace was not followed to its end");
+            } else if (trace.isReplaying()) {
+                trace.checkFinished();
+                System.out.println("\nReplay followed all " + trace.numEvents() + " events of " + options.get("replay", ""));
+            } else {
+                System.out.println("\nRecorded " + trace.numEvents() + " events to " + options.get("record", ""));
             }
+        }
+    }
 
-            // Create the routing stations for this simulation run
-            for (int i = 0; i < numStations; i++) {
-                int workload = configFile.get(i + 1);
-                ConveyorObj inputConveyor = conveyorArr[i];
-                ConveyorObj outputConveyor = conveyorArr[(i + 1) % numStations];
-                RoutingStation station = new RoutingStation(i, inputConveyor, outputConveyor, workload);
-                threadController.execute(station);
+    // Method to build the conveyors and routing stations of a threaded run and run them until every workload is
+    // done. Everything the run touches is created here, so sweep runs can call it side by side. Every station gets
+    // its own random numbers, split off the run's seed in station order, so a seeded station draws the same times
+    // however the threads are scheduled. The run is over when the tracker has seen every station stop, which is
+    // returned so the caller can tell a finished run from a drained or aborted one.
+    static CompletionTracker runStations(FacilityTopology topology, SimOptions options, ServiceTimes services, ConveyorAcquisitionStrategy strategy,
+    SimulationStats stats, PackageFlow packageFlow, SimMetrics metrics, SimTrace trace, EventLog log) throws InterruptedException, IOException {
+        int numStations = topology.numStations();
+        int numConveyors = topology.numConveyors();
+        String conveyorKind = options.get("conveyor", "lock");
+
+        // Create thread pool with one thread per station
+        ExecutorService threadController = createExecutor(options.get("executor", "platform"), numStations);
+
+        // Create an array of ConveyorV1 objects - with room for the conveyors a control channel may add
+        ConveyorObj[] conveyorArr = new ConveyorObj[numConveyors + (options.has("control") ? FacilityControl.MAX_SPLICED : 0)];
+        for (int i = 0; i < numConveyors; i++) {
+            conveyorArr[i] = ConveyorObj.create(conveyorKind, i);
+            if (trace != null) {
+                conveyorArr[i] = new TracedConveyor(conveyorArr[i], trace);
             }
+        }
+        SplittableRandom seeds = options.has("seed") ? new SplittableRandom(options.getLong("seed", 0)) : new SplittableRandom();
+        BackoffPolicy backoff = BackoffPolicy.create(options.get("backoff", "random"), topology);
+        CompletionTracker tracker = new CompletionTracker(topology, 0, numStations);
+        tracker.configure(options, conveyorArr);
+        FacilityControl control = null;
+        if (options.has("control")) {
+            control = new FacilityControl(topology, options, stats, tracker, strategy, backoff, conveyorArr, seeds);
+        }
 
-            // Application shutdown
-            threadController.shutdown(); // Start the shutdown process - no new threads (tasks) will be started after this call.
-            threadController.awaitTermination(1, TimeUnit.MINUTES); // Blocking technique
+        // Create the routing stations for this simulation run
+        for (int i = 0; i < numStations; i++) {
+            RoutingStation station = createStation(topology, i, conveyorArr, options, services, strategy, stats, log);
+            station.setRandom(seeds.split());
+            station.setBackoff(backoff);
+            station.setTrace(trace);
+            station.setPackageFlow(packageFlow);
+            station.setMetrics(metrics);
+            station.setTracker(tracker);
+            if (control != null) {
+                control.addStation(station);
+            }
+            threadController.execute(station);
+        }
+        if (control != null) {
+            control.start(options.get("control", "stdin"));
+        }
 
-            System.out.println("\n*** ALL WORKLOAD COMPLETED - SIMULATION IS SHUTTING DOWN ***");
-            System.out.println("*** THE PACKAGE MANAGEMENT FACILITY SIMULATION HAS ENDED ***");
+        threadController.shutdown(); // Start the shutdown process - no new threads (tasks) will be started after this call.
+        try {
+            tracker.awaitCompletion(); // Blocking technique - until every station has stopped
+        } finally {
+            if (control != null) {
+                try {
+                    control.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            strategy.close();
+            stats.setElapsedTime(stats.wallMillis());
+            stats.setConcurrencyBound(topology.concurrencyBound());
+        }
+        return tracker;
+    }
 
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    // Method to build one routing station on the given conveyors, which are indexed by conveyor ID
+    static RoutingStation createStation(FacilityTopology topology, int stationID, ConveyorObj[] conveyorArr, SimOptions options,
+    ServiceTimes services, ConveyorAcquisitionStrategy strategy, SimulationStats stats, EventLog log) {
+        int inputs = topology.inputCount(stationID);
+        ConveyorObj[] inputConveyors = new ConveyorObj[inputs];
+        ConveyorObj[] outputConveyors = new ConveyorObj[topology.conveyorCount(stationID) - inputs];
+        for (int k = 0; k < topology.conveyorCount(stationID); k++) {
+            if (k < inputs) {
+                inputConveyors[k] = conveyorArr[topology.conveyor(stationID, k)];
+            } else {
+                outputConveyors[k - inputs] = conveyorArr[topology.conveyor(stationID, k)];
+            }
+        }
+        RoutingStation station = new RoutingStation(stationID, inputConveyors, outputConveyors, topology.workload(stationID), stats, strategy, log);
+        station.setTiming(options.getInt("max-work-ms", 1000), options.getInt("max-sleep-ms", 500));
+        station.setServiceTime(services.of(stationID));
+        return station;
+    }
+
+    // Method to run a parameter sweep, streaming one CSV row per run to --sweep-file or stdout
+    static void runSweep(SimOptions options) throws IOException, InterruptedException {
+        ParameterSweep sweep = new ParameterSweep(options);
+        String sweepFile = options.get("sweep-file", null);
+        PrintStream out = (sweepFile == null) ? System.out : new PrintStream(new FileOutputStream(sweepFile), false);
+        long wallMillis = sweep.run(out);
+        if (out != System.out) {
+            out.close();
+            System.out.println("Sweep of " + sweep.numRuns() + " runs written to " + sweepFile + " in " + wallMillis + " ms");
+        }
+    }
+
+    // Method to print the configuration listing - small facilities are listed station by station
+    static void printConfiguration(FacilityTopology topology) {
+        int numStations = topology.numStations();
+        System.out.println("Configuration/Input:");
+        System.out.println("\tNumber of Stations: " + numStations);
+        if (!topology.isRing()) {
+            System.out.println("\tNumber of Conveyors: " + topology.numConveyors());
+        }
+
+        for (int i = 0; i < numStations && numStations <= LISTED_STATIONS; i++){
+            if (topology.isRing()) {
+                System.out.println("\tStation " + (i + 1) + ": " + topology.workload(i) + " package(s)");
+            } else {
+                System.out.println("\tStation S" + i + ": " + topology.workload(i) + " package(s), " + topology.describe(i));
+            }
+        }
+    }
+
+    // Method to run the simulation as a discrete-event run on a virtual clock - only the summary is printed
+    static void runVirtual(FacilityTopology topology, SimOptions options) throws IOException, InterruptedException {
+        ServiceTimes services = ServiceTimes.create(topology, options);
+        System.out.println("Configuration/Input:");
+        System.out.println("\tNumber of Stations: " + topology.numStations());
+        System.out.println("\tService times: " + services.describe());
+
+        // Checkpoints hold the station and conveyor state but not the packages on the conveyors
+        if (options.getInt("packages", 0) > 0 && (options.has("checkpoint") || options.has("resume"))) {
+            throw new IllegalArgumentException("--checkpoint and --resume cannot be used with --packages");
+        }
+        SimCheckpoint from = null;
+        int fromIndex = 0;
+        if (options.has("resume")) {
+            from = SimCheckpoint.open(options.get("resume", "run.ckpt"));
+            fromIndex = options.getInt("resume-from", from.count() - 1);
+            from.check(topology, fromIndex);
+            System.out.println("\tResuming from checkpoint " + fromIndex + " of " + options.get("resume", "") + " at " + from.time(fromIndex)
+            + " ms of virtual time (checkpoints 0 to " + (from.count() - 1) + " are available)");
+            if (options.getInt("fork", 1) > 1) {
+                if (options.has("checkpoint")) {
+                    throw new IllegalArgumentException("--checkpoint cannot be used with --fork");
+                }
+                runForks(topology, options, services, from, fromIndex);
+                from.close();
+                return;
+            }
+        }
+        System.out.println("\n*** PACKAGE MANAGEMENT FACILITY SIMULATION BEGINS (VIRTUAL CLOCK) *** \n");
+
+        VirtualClockSim sim = new VirtualClockSim(topology, options.getInt("max-work-ms", 1000), options.getInt("max-sleep-ms", 500));
+        sim.setServiceTimes(services);
+        if (options.has("seed") && from == null) {
+            sim.setSeed(options.getLong("seed", 0));
+        }
+        PackageFlow packageFlow = createPackageFlow(options, topology);
+        if (packageFlow != null) {
+            sim.setPackageFlow(packageFlow);
+        }
+        SimCheckpoint checkpoint = null;
+        if (options.has("checkpoint")) {
+            if (options.get("checkpoint", "").equals(options.get("resume", null))) {
+                throw new IllegalArgumentException("A resumed run must write its checkpoints to another file than --resume");
+            }
+            // A resumed run keeps the interval of the checkpoint it came from unless it is given another
+            long everyMillis = options.getLong("checkpoint-every-ms", from != null ? from.everyMillis() : 60_000);
+            checkpoint = SimCheckpoint.create(options.get("checkpoint", "run.ckpt"), topology, everyMillis);
+            sim.setCheckpoints(checkpoint);
+        }
+        if (from != null) {
+            sim.resume(from, fromIndex);
+            from.close();
+        }
+
+        long startNanos = System.nanoTime();
+        SimulationStats stats = sim.run();
+        long wallMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        System.out.println("*** ALL WORKLOAD COMPLETED - SIMULATION IS SHUTTING DOWN ***");
+        System.out.println("*** THE PACKAGE MANAGEMENT FACILITY SIMULATION HAS ENDED ***");
+        stats.print("virtual clock");
+        System.out.println("\tWall-clock run time: " + wallMillis + " ms");
+        printSteps(sim.getSteps(), wallMillis);
+        if (checkpoint != null) {
+            System.out.println("\tCheckpoints: " + checkpoint.describe());
+            checkpoint.close();
+        }
+        if (packageFlow != null) {
+            packageFlow.print();
+        }
+    }
+
+    // Method to run --fork branches from the same checkpoint side by side on --parallelism threads. Branch 0 goes
+    // on with the random numbers of the original run, the others with seeds drawn from it, so they diverge from the
+    // checkpoint on; options such as --service or --max-sleep-ms given now apply to every branch.
+    static void runForks(FacilityTopology topology, SimOptions options, ServiceTimes services, SimCheckpoint from, int fromIndex)
+    throws InterruptedException {
+        int forks = options.getInt("fork", 1);
+        int parallelism = options.getInt("parallelism", Runtime.getRuntime().availableProcessors());
+        SplittableRandom seeds = new SplittableRandom(from.seed(fromIndex));
+        long[] branchSeeds = new long[forks];
+        for (int b = 0; b < forks; b++) {
+            branchSeeds[b] = b == 0 ? from.seed(fromIndex) : seeds.nextLong();
+        }
+        System.out.println("\n*** " + forks + " BRANCHES OF THE SIMULATION BEGIN (VIRTUAL CLOCK) *** \n");
+
+        SimulationStats[] results = new SimulationStats[forks];
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, forks)));
+        List<Future<?>> branches = new ArrayList<>();
+        for (int b = 0; b < forks; b++) {
+            int branch = b;
+            branches.add(pool.submit(() -> {
+                VirtualClockSim sim = new VirtualClockSim(topology, options.getInt("max-work-ms", 1000), options.getInt("max-sleep-ms", 500));
+                sim.setServiceTimes(services);
+                sim.resume(from, fromIndex);
+                sim.setSeed(branchSeeds[branch]);
+                results[branch] = sim.run();
+                return null;
+            }));
+        }
+        pool.shutdown();
+        try {
+            for (Future<?> branch : branches) {
+                branch.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A branch failed: " + e.getCause(), e.getCause());
+        }
+
+        System.out.println("Completion Statistics (virtual clock, " + forks + " branches from checkpoint " + fromIndex + "):");
+        for (int b = 0; b < forks; b++) {
+            SimulationStats stats = results[b];
+            System.out.printf(Locale.ROOT, "\tBranch %d (seed %d): %d package groups, %d retries, max wait %d ms, elapsed %d ms, %.2f package groups/s%n",
+            b, branchSeeds[b], stats.totalGroups(), stats.totalRetries(), stats.maxWaitNanos() / 1_000_000, stats.getElapsedTime(),
+            stats.getElapsedTime() > 0 ? stats.totalGroups() * 1000.0 / stats.getElapsedTime() : 0);
+        }
+    }
+
+    // Method to run the simulation on the struct-of-arrays engine, split over --parallelism worker threads
+    static void runStepped(FacilityTopology topology, SimOptions options) throws IOException, InterruptedException {
+        if (options.has("packages")) {
+            throw new IllegalArgumentException("--packages is not supported in the stepped mode - use the virtual mode");
+        }
+        int parallelism = options.getInt("parallelism", Runtime.getRuntime().availableProcessors());
+        ServiceTimes services = ServiceTimes.create(topology, options);
+        System.out.println("Configuration/Input:");
+        System.out.println("\tNumber of Stations: " + topology.numStations());
+        System.out.println("\tService times: " + services.describe());
+        System.out.println("\n*** PACKAGE MANAGEMENT FACILITY SIMULATION BEGINS (STEPPED, " + parallelism + " WORKER(S)) *** \n");
+
+        SteppedSim sim = new SteppedSim(topology, options.getInt("max-work-ms", 1000), options.getInt("max-sleep-ms", 500));
+        sim.setServiceTimes(services);
+        if (options.has("seed")) {
+            sim.setSeed(options.getLong("seed", 0));
+        }
+
+        long startNanos = System.nanoTime();
+        SimulationStats stats = sim.run(parallelism);
+        long wallMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        System.out.println("*** ALL WORKLOAD COMPLETED - SIMULATION IS SHUTTING DOWN ***");
+        System.out.println("*** THE PACKAGE MANAGEMENT FACILITY SIMULATION HAS ENDED ***");
+        stats.print("virtual clock, stepped");
+        System.out.println("\tWall-clock run time: " + wallMillis + " ms");
+        printSteps(sim.getSteps(), wallMillis);
+    }
+
+    private static void printSteps(long steps, long wallMillis) {
+        System.out.println("\tSteps: " + steps + (wallMillis > 0 ? String.format(Locale.ROOT, " (%.0f steps/s)", steps * 1000.0 / wallMillis) : ""));
+    }
+
+    // Method to set up the package-flow model if --packages was given - every conveyor holds --conveyor-capacity
+    // packages (default 4 groups) unless the topology gives it its own capacity
+    static PackageFlow createPackageFlow(SimOptions options, FacilityTopology topology) {
+        int groupSize = options.getInt("packages", 0);
+        if (groupSize <= 0) {
+            return null;
         }
+        return new PackageFlow(topology, groupSize, options.getInt("conveyor-capacity", 4 * groupSize));
     }
 }
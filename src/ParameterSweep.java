@@ -0,0 +1,176 @@
+package src;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Class for the parameter sweep mode. Every option given as a comma separated list (--stations=10,100,1000) is an
+// axis of the grid, and every combination is run --runs times, each time with the next seed, as an independent
+// simulation with its own facility, stations, conveyors, stats and random numbers - nothing is shared between
+// runs. The runs are spread over a ForkJoinPool with one worker per core (--parallelism), and one CSV row per
+// run is written as soon as it finishes, so a long sweep can be watched and cut short without losing results.
+public class ParameterSweep {
+    private final SimOptions options;
+    private final List<String> axes = new ArrayList<>();
+    private final List<String[]> axisValues = new ArrayList<>();
+    private final int runsPerPoint;
+    private final int numRuns;
+    private final String runMode;
+    private final Map<String, FacilityTopology> facilities = new ConcurrentHashMap<>(); // facility files, read once
+
+    // Constructor method - works out the grid from the options
+    public ParameterSweep(SimOptions options) {
+        this.options = options;
+        this.runsPerPoint = options.getInt("runs", 1);
+        this.runMode = options.get("run-mode", "virtual");
+        if (runsPerPoint < 1) {
+            throw new IllegalArgumentException("--runs needs to be at least 1");
+        }
+        if (!runMode.equals("virtual") && !runMode.equals("threaded")) {
+            throw new IllegalArgumentException("Unknown run mode \"" + runMode + "\" - expected virtual or threaded");
+        }
+        long points = 1;
+        for (String key : options.keys()) {
+            String value = options.get(key, "");
+            if (value.indexOf(',') >= 0) {
+                String[] values = value.split(",");
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = values[i].trim();
+                }
+                axes.add(key);
+                axisValues.add(values);
+                points *= values.length;
+            }
+        }
+        if (points * runsPerPoint > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The sweep has too many runs - " + points * runsPerPoint);
+        }
+        this.numRuns = (int) (points * runsPerPoint);
+    }
+
+    public int numRuns() {
+        return numRuns;
+    }
+
+    // Method to get the options of one run - the run number picks a grid point and a seed
+    SimOptions runOptions(int run) {
+        SimOptions runOptions = options;
+        int point = run / runsPerPoint;
+        for (int a = axes.size() - 1; a >= 0; a--) {
+            String[] values = axisValues.get(a);
+            runOptions = runOptions.with(axes.get(a), values[point % values.length]);
+            point /= values.length;
+        }
+        return runOptions.with("seed", Long.toString(runOptions.getLong("seed", 0) + run % runsPerPoint));
+    }
+
+    // Method to run the whole sweep, writing the CSV rows to out, and return the wall-clock time it took
+    public long run(PrintStream out) throws InterruptedException {
+        int parallelism = options.getInt("parallelism", Runtime.getRuntime().availableProcessors());
+        StringBuilder header = new StringBuilder("run");
+        for (String axis : axes) {
+            header.append(',').append(axis);
+        }
+        header.append(",seed,num_stations,num_conveyors,total_groups,retries,max_wait_ms,idle_ms,elapsed_ms,throughput,avg_working,bound,wall_ms");
+        out.println(header.append(",delivered,transit_p99_ms"));
+
+        long startNanos = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        AtomicReference<Exception> failure = new AtomicReference<>(); // the first run that failed, if any
+        try {
+            List<Callable<Void>> runs = new ArrayList<>(numRuns);
+            for (int i = 0; i < numRuns; i++) {
+                int run = i;
+                runs.add(() -> {
+                    try {
+                        String row = runOne(run);
+                        synchronized (out) {
+                            out.println(row);
+                            out.flush();
+                        }
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                    return null;
+                });
+            }
+            pool.invokeAll(runs);
+        } finally {
+            pool.shutdown();
+        }
+        Exception e = failure.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e != null) {
+            throw new IllegalStateException("A sweep run failed", e);
+        }
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    // Method to run one simulation of the sweep and describe it as a CSV row
+    private String runOne(int run) throws IOException, InterruptedException {
+        SimOptions runOptions = runOptions(run);
+        FacilityTopology topology = facility(runOptions);
+        PackageFlow packageFlow = PackageRoutingSim.createPackageFlow(runOptions, topology);
+        long seed = runOptions.getLong("seed", 0);
+        ServiceTimes services = ServiceTimes.create(topology, runOptions);
+
+        long startNanos = System.nanoTime();
+        SimulationStats stats;
+        if (runMode.equals("virtual")) {
+            VirtualClockSim sim = new VirtualClockSim(topology, runOptions.getInt("max-work-ms", 1000), runOptions.getInt("max-sleep-ms", 500));
+            sim.setServiceTimes(services);
+            sim.setSeed(seed);
+            sim.setPackageFlow(packageFlow);
+            stats = sim.run();
+        } else {
+            stats = SimulationStats.forThreads(topology.numStations(), 0);
+            ConveyorAcquisitionStrategy strategy = ConveyorAcquisitionStrategy.create(runOptions.get("strategy", "trylock"), topology);
+            PackageRoutingSim.runStations(topology, runOptions, services, strategy, stats, packageFlow, null, null, EventLog.disabled());
+        }
+        long wallMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        StringBuilder row = new StringBuilder().append(run);
+        for (String axis : axes) {
+            row.append(',').append(runOptions.get(axis, ""));
+        }
+        row.append(',').append(seed).append(',').append(topology.numStations()).append(',').append(topology.numConveyors())
+        .append(',').append(stats.totalGroups()).append(',').append(stats.totalRetries()).append(',').append(stats.maxWaitNanos() / 1_000_000)
+        .append(',').append(stats.totalIdleNanos() / 1_000_000)
+        .append(',').append(stats.getElapsedTime())
+        .append(',').append(stats.getElapsedTime() > 0 ? String.format(Locale.ROOT, "%.2f", stats.totalGroups() * 1000.0 / stats.getElapsedTime()) : "")
+        .append(',').append(String.format(Locale.ROOT, "%.2f", stats.averageWorking())).append(',').append(stats.getConcurrencyBound())
+        .append(',').append(wallMillis).append(',');
+        if (packageFlow != null) {
+            row.append(packageFlow.getDelivered()).append(',').append(String.format(Locale.ROOT, "%.3f", packageFlow.getTransit().percentile(99) / 1e6));
+        } else {
+            row.append(',');
+        }
+        return row.toString();
+    }
+
+    // Method to get the facility of a run - a topology or config file is read once and shared, since a
+    // FacilityTopology is never changed, while --stations generates the ring from the run's own seed
+    private FacilityTopology facility(SimOptions runOptions) throws IOException {
+        if (runOptions.has("topology")) {
+            String path = runOptions.get("topology", "topology.txt");
+            FacilityTopology topology = facilities.get("topology:" + path);
+            if (topology == null) {
+                topology = FacilityTopology.read(path);
+                facilities.putIfAbsent("topology:" + path, topology);
+            }
+            return topology;
+        }
+        if (runOptions.has("stations")) {
+            return FacilityTopology.ring(WorkloadSource.generated(runOptions.getInt("stations", 0), runOptions.getInt("max-workload", 10),
+            runOptions.getLong("seed", 0)));
+        }
+        String path = runOptions.get("config", "config.txt");
+        FacilityTopology topology = facilities.get("config:" + path);
+        if (topology == null) {
+            topology = FacilityTopology.ring(WorkloadSource.of(ConfigFile.read(path)));
+            facilities.putIfAbsent("config:" + path, topology);
+        }
+        return topology;
+    }
+}
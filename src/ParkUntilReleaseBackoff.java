@@ -0,0 +1,75 @@
+package src;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Policy for waiting on the conveyor itself: instead of sleeping and polling, a station that found a conveyor
+// taken parks until the holder lets it go and is woken by the release. A held up package group has no conveyor to
+// wait for and falls back to the random sleep.
+// Waiting stations queue up per conveyor, like the parked stations of an AtomicConveyor, and a release only looks
+// further when the queue is not empty. The waiter joins the queue before it looks at the conveyor and the releasing
+// station lets go before it looks at the queue, so one of them always sees the other and no wake-up is lost.
+// Parking goes through LockSupport rather than a monitor, so a station on a virtual thread does not pin its carrier.
+// The wait is capped at --max-sleep-ms so a release the policy is not told about - a conveyor leased from another
+// process - cannot leave a station asleep, and --max-sleep-ms=0 makes the back-off free as for the other policies.
+public class ParkUntilReleaseBackoff implements BackoffPolicy {
+    private final AtomicReferenceArray<ConcurrentLinkedQueue<Thread>> waiters; // per conveyor, made when first waited on
+
+    public ParkUntilReleaseBackoff(int numConveyors) {
+        this.waiters = new AtomicReferenceArray<>(numConveyors);
+    }
+
+    @Override
+    public void backOff(RoutingStation station, ConveyorObj conveyor) throws InterruptedException {
+        int maxSleepMillis = station.getMaxSleepMillis();
+        if (conveyor == null) {
+            station.sleepRandom(maxSleepMillis);
+            return;
+        }
+        if (maxSleepMillis <= 0) {
+            return;
+        }
+        ConcurrentLinkedQueue<Thread> queue = waiterQueue(conveyor.getID());
+        Thread current = Thread.currentThread();
+        queue.add(current);
+        try {
+            long deadline = System.nanoTime() + maxSleepMillis * 1_000_000L;
+            while (conveyor.getLockedBy() != ConveyorObj.FREE) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return;
+                }
+                LockSupport.parkNanos(this, left);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            queue.remove(current);
+        }
+    }
+
+    @Override
+    public void released(ConveyorObj conveyor) {
+        ConcurrentLinkedQueue<Thread> queue = waiters.get(conveyor.getID());
+        if (queue != null && !queue.isEmpty()) {
+            for (Thread waiter : queue) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    private ConcurrentLinkedQueue<Thread> waiterQueue(int conveyorID) {
+        ConcurrentLinkedQueue<Thread> queue = waiters.get(conveyorID);
+        if (queue == null) {
+            waiters.compareAndSet(conveyorID, null, new ConcurrentLinkedQueue<>());
+            queue = waiters.get(conveyorID);
+        }
+        return queue;
+    }
+
+    @Override
+    public String name() {
+        return "park";
+    }
+}
@@ -0,0 +1,15 @@
+package src;
+
+// Policy for the original back-off: sleep a uniform random time below --max-sleep-ms, however busy the facility is
+public class RandomBackoff implements BackoffPolicy {
+
+    @Override
+    public void backOff(RoutingStation station, ConveyorObj conveyor) throws InterruptedException {
+        station.sleepRandom(station.getMaxSleepMillis());
+    }
+
+    @Override
+    public String name() {
+        return "random";
+    }
+}
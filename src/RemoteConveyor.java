@@ -0,0 +1,137 @@
+package src;
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Class for a boundary conveyor owned by another shard of a sharded run. Locking and releasing it is a request to
+// the owning worker's lease server, which takes or lets go of the real conveyor for the station and replies. Every
+// station gets its own connection to each shard it leases from, so a blocking lock only ever holds up the station
+// that asked for it and the requests of one station arrive in order.
+public class RemoteConveyor extends ConveyorObj {
+    static final int TRY_LOCK = 1;
+    static final int LOCK = 2;
+    static final int UNLOCK = 3;
+
+    private final int owner;
+    private final Links links;
+    // Only the local station holding the lease sets holder and holds, so they are kept apart from the holder a
+    // failed attempt reports, which any local station may set at any time
+    private volatile int holder = FREE; // the local station holding the lease
+    private volatile int holds = 0; // nested holds by the local holder
+    private volatile int reportedHolder = FREE; // the holder reported by the last failed attempt
+
+    // Constructor method - owner is the shard the conveyor is leased from
+    public RemoteConveyor(int conveyorID, int owner, Links links) {
+        super(conveyorID);
+        this.owner = owner;
+        this.links = links;
+    }
+
+    @Override
+    public int getLockedBy() {
+        int local = holder;
+        return local != FREE ? local : reportedHolder;
+    }
+
+    @Override
+    public boolean lockConveyor(int stationID) {
+        int reply = links.link(stationID, owner).call(TRY_LOCK, getID(), stationID);
+        if (reply == stationID) {
+            held(stationID);
+            return true;
+        }
+        reportedHolder = reply;
+        return false;
+    }
+
+    @Override
+    public void lockConveyorBlocking(int stationID) {
+        links.link(stationID, owner).call(LOCK, getID(), stationID);
+        held(stationID);
+    }
+
+    private void held(int stationID) {
+        if (holder == stationID) {
+            holds++;
+        } else {
+            holds = 0;
+            holder = stationID;
+            reportedHolder = FREE;
+        }
+    }
+
+    @Override
+    public void unlockConveyor() {
+        int stationID = holder;
+        if (stationID == FREE) {
+            throw new IllegalStateException("Conveyor C" + getID() + " is not held by a station of this shard");
+        }
+        if (holds > 0) {
+            holds--;
+        } else {
+            holder = FREE;
+        }
+        links.link(stationID, owner).call(UNLOCK, getID(), stationID);
+    }
+
+    // Class for the connections of one worker's stations to the lease servers of the other shards
+    public static class Links {
+        private final int[] ports; // lease server port of every shard
+        private final ConcurrentHashMap<Long, Link> links = new ConcurrentHashMap<>();
+
+        public Links(int[] ports) {
+            this.ports = ports;
+        }
+
+        // Method to get the connection of a station to a shard, opening it the first time
+        Link link(int stationID, int shard) {
+            return links.computeIfAbsent(((long) stationID << 32) | shard, key -> new Link(ports[shard]));
+        }
+
+        // Method to close every connection at the end of the run
+        public void close() {
+            for (Link link : links.values()) {
+                link.close();
+            }
+        }
+    }
+
+    // Class for one request/reply connection - only ever used by the station thread it belongs to
+    static class Link {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Link(int port) {
+            try {
+                socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                socket.setTcpNoDelay(true);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot reach the lease server on port " + port, e);
+            }
+        }
+
+        // Method to send one request and wait for the reply - the station holding the conveyor, or FREE
+        int call(int op, int conveyorID, int stationID) {
+            try {
+                out.writeByte(op);
+                out.writeInt(conveyorID);
+                out.writeInt(stationID);
+                out.flush();
+                return in.readInt();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Lost the lease server of conveyor C" + conveyorID, e);
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing more to do with a closed connection
+            }
+        }
+    }
+}
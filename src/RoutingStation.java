@@ -1,92 +1,368 @@
 package src;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // Class for the instances of the runnable object/thread for the Routing Stations
 public class RoutingStation implements Runnable {
     private final int stationID;
-    private final ConveyorObj inputConveyor;
-    private final ConveyorObj outputConveyor;
-    private int workload;
-    private static final Random randomSeed = new Random();
+    private ConveyorObj[] conveyors; // inputs first, then outputs that are not also inputs
+    private final int numInputs;
+    private ConveyorObj[] lockOrder; // the same conveyors by ascending ID
+    private final AtomicInteger workload; // groups left - once 0 no more work can be handed to the station
+    private final SimulationStats stats;
+    private final ConveyorAcquisitionStrategy strategy;
+    private PackageFlow packageFlow; // null unless the run moves real packages
+    private SimMetrics metrics; // null unless the run collects live metrics
+    private volatile ServiceTime service = ServiceTime.uniform(1000); // may be changed while the station runs
+    private int maxSleepMillis = 500;
+    private SplittableRandom random = new SplittableRandom(); // one per station, so stations and simultaneous runs share no state
+    private SimTrace trace; // null unless the run is recorded or replayed
+    private BackoffPolicy backoff = new RandomBackoff();
+    private CompletionTracker tracker; // null unless something follows the run to its end
+    private boolean interrupted = false; // set once the station's thread was interrupted - it then stops as soon as it can
+    private FacilityControl control; // null unless the facility can be changed while it runs
+    private final EventLog log;
+    private volatile boolean offline = false; // set when the station is taken offline by the control channel
+    private final ConcurrentLinkedQueue<ConveyorObj[]> swaps = new ConcurrentLinkedQueue<>(); // {old, new} conveyors to swap
 
-    // RoutingStation constructor method
-    public RoutingStation(int stationID, ConveyorObj inputConveyor, ConveyorObj outputConveyor, int workload) {
+    // RoutingStation constructor method for a station of the ring, with one input and one output conveyor
+    public RoutingStation(int stationID, ConveyorObj inputConveyor, ConveyorObj outputConveyor, int workload, SimulationStats stats,
+    ConveyorAcquisitionStrategy strategy) {
+        this(stationID, new ConveyorObj[] {inputConveyor}, new ConveyorObj[] {outputConveyor}, workload, stats, strategy, EventLog.disabled());
+    }
+
+    // RoutingStation constructor method for a station with any number of input and output conveyors, recording its
+    // events to the run's log
+    public RoutingStation(int stationID, ConveyorObj[] inputs, ConveyorObj[] outputs, int workload, SimulationStats stats,
+    ConveyorAcquisitionStrategy strategy, EventLog log) {
         this.stationID = stationID;
-        this.inputConveyor = inputConveyor;
-        this.outputConveyor = outputConveyor;
-        this.workload = workload;
+        this.log = log;
+        this.workload = new AtomicInteger(workload);
+        this.stats = stats;
+        this.strategy = strategy;
+
+        ConveyorObj[] all = Arrays.copyOf(inputs, inputs.length + outputs.length);
+        int count = inputs.length;
+        for (ConveyorObj output : outputs) {
+            if (!Arrays.asList(inputs).contains(output)) {
+                all[count++] = output;
+            }
+        }
+        this.numInputs = inputs.length;
+        setConveyors((count == all.length) ? all : Arrays.copyOf(all, count));
+
+        for (ConveyorObj input : inputs) {
+            log.record(EventLog.INPUT_ASSIGNED, stationID, input.getID(), 0);
+        }
+        for (ConveyorObj output : outputs) {
+            log.record(EventLog.OUTPUT_ASSIGNED, stationID, output.getID(), 0);
+        }
+        log.record(EventLog.WORKLOAD_ASSIGNED, stationID, -1, workload);
+    }
+
+    private void setConveyors(ConveyorObj[] all) {
+        this.conveyors = all;
+        ConveyorObj[] sorted = conveyors.clone();
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.getID(), b.getID()));
+        this.lockOrder = Arrays.equals(sorted, conveyors) ? conveyors : sorted;
+    }
+
+    // Getter functions used by the conveyor acquisition strategies
+    public int getStationID() {
+        return stationID;
+    }
+
+    // Every conveyor the station has to hold to work - its inputs first, then its outputs, each conveyor once
+    public ConveyorObj[] getConveyors() {
+        return conveyors;
+    }
+
+    // The same conveyors by ascending ID, for strategies that lock in a global order
+    public ConveyorObj[] getLockOrder() {
+        return lockOrder;
+    }
+
+    // True when the k-th conveyor of getConveyors() is one of the station's inputs
+    public boolean isInput(int k) {
+        return k < numInputs;
+    }
+
+    // Method to log that the station now holds its k-th conveyor
+    public void recordLocked(int k) {
+        log.record(isInput(k) ? EventLog.INPUT_LOCKED : EventLog.OUTPUT_LOCKED, stationID, conveyors[k].getID(), 0);
+    }
+
+    // Method to unlock the station's k-th conveyor and log it
+    public void unlockConveyor(int k) {
+        conveyors[k].unlockConveyor();
+        backoff.released(conveyors[k]);
+        log.record(isInput(k) ? EventLog.INPUT_RELEASED : EventLog.OUTPUT_RELEASED, stationID, conveyors[k].getID(), 0);
+    }
+
+    // The event log of the run, for the strategies to record their own events
+    public EventLog getLog() {
+        return log;
+    }
 
-        System.out.println("\tRouting Station S" + stationID + ": Input conveyor assigned to conveyor number C" + inputConveyor.getID() + ".");
-        System.out.println("\tRouting Station S" + stationID + ": Output conveyor assigned to conveyor number C" + outputConveyor.getID() + ".");
-        System.out.println("\tRouting Station S" + stationID + " Has Total Workload of " + workload + " Package Groups.\n");
+    public SimulationStats getStats() {
+        return stats;
     }
 
-    // Method for threads to go to sleep
+    // Number of package groups the station has left
+    public int getWorkload() {
+        return workload.get();
+    }
+
+    // Method to hand the station more package groups while it runs - returns false when it has already finished
+    // its workload, or is going offline, and takes no more work
+    public boolean addWorkload(int groups) {
+        if (offline) {
+            return false;
+        }
+        return workload.getAndUpdate(left -> left > 0 ? left + groups : left) > 0;
+    }
+
+    // Method to take the station offline - it stops before its next package group and hands the groups it has
+    // left to the facility control
+    public void takeOffline() {
+        offline = true;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    // Method to make the station use another conveyor in place of one of its own from its next package group on -
+    // swaps are applied in the order they are asked for, between groups, when the station holds no conveyor
+    public void replaceConveyor(ConveyorObj old, ConveyorObj replacement) {
+        swaps.add(new ConveyorObj[] {old, replacement});
+    }
+
+    // Method to apply the conveyor swaps asked for since the last package group
+    private void applySwaps() {
+        ConveyorObj[] swap;
+        while ((swap = swaps.poll()) != null) {
+            ConveyorObj[] replaced = conveyors.clone();
+            for (int k = 0; k < replaced.length; k++) {
+                if (replaced[k] == swap[0]) {
+                    replaced[k] = swap[1];
+                    log.record(isInput(k) ? EventLog.INPUT_ASSIGNED : EventLog.OUTPUT_ASSIGNED, stationID, swap[1].getID(), 0);
+                }
+            }
+            setConveyors(replaced);
+        }
+    }
+
+    // Method to let the facility control take back the work of a station taken offline
+    public void setControl(FacilityControl control) {
+        this.control = control;
+    }
+
+    // Method to change the upper bounds of the random work and sleep times - 0 makes them free, for benchmarks
+    public void setTiming(int maxWorkMillis, int maxSleepMillis) {
+        this.service = ServiceTime.uniform(maxWorkMillis);
+        this.maxSleepMillis = maxSleepMillis;
+    }
+
+    // Method to give the station a service time other than the uniform one of setTiming
+    public void setServiceTime(ServiceTime service) {
+        this.service = service;
+    }
+
+    public ServiceTime getServiceTime() {
+        return service;
+    }
+
+    public int getMaxSleepMillis() {
+        return maxSleepMillis;
+    }
+
+    // Method to pick how the station backs off after a failed attempt or a held up package group
+    public void setBackoff(BackoffPolicy backoff) {
+        this.backoff = backoff;
+    }
+
+    // Method to give the station its own random number generator - split off the run's seeded one, so the
+    // station's work and sleep times are the same every run with that seed
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
+    }
+
+    // Method to make the station record its work and sleep times to a trace, or take them from one in replay
+    public void setTrace(SimTrace trace) {
+        this.trace = trace;
+    }
+
+    // Method to make the station move real packages between its conveyors' package queues
+    public void setPackageFlow(PackageFlow packageFlow) {
+        this.packageFlow = packageFlow;
+    }
+
+    // Method to make the station report its progress to the tracker and follow its drain and abort requests
+    public void setTracker(CompletionTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    // True once the station should stop before its next package group
+    private boolean stopping() {
+        return interrupted || offline || (tracker != null && tracker.isStopping());
+    }
+
+    // True once the station should not work or sleep any more - it was interrupted or the run was aborted
+    private boolean aborted() {
+        return interrupted || (tracker != null && tracker.isAborting());
+    }
+
+    // Method to make the station report to the live metrics
+    public void setMetrics(SimMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Method for the acquisition strategies to count a failed or blocked attempt at the conveyors
+    public void recordFailedAttempt() {
+        stats.recordRetry(stationID);
+        if (metrics != null) {
+            metrics.recordFailedAttempt(stationID);
+        }
+    }
+
+    // Method for threads to go to sleep after a held up package group
     public void goToSleep() {
+        backOff(null);
+    }
+
+    // Method for threads to back off before trying again, as the back-off policy says - taken is the conveyor that
+    // was in use, or null after a held up package group. The time spent is counted as the station's idle time.
+    public void backOff(ConveyorObj taken) {
+        if (aborted()) {
+            Thread.yield(); // no more sleeping - the station only tries until its neighbours have let go and it can stop
+            return;
+        }
+        if (metrics != null) {
+            metrics.recordBackoff(stationID);
+        }
+        long start = System.nanoTime();
         try {
-            Thread.sleep(randomSeed.nextInt(500)); // Sleep a random time up to 500ms
+            backoff.backOff(this, taken);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            interrupted = true;
         }
+        stats.recordIdle(stationID, System.nanoTime() - start);
     }
 
-    // Method for simulating Routing Station work during which the station is moving packages
-    public void doWork() {
+    // Method for the back-off policies to sleep a random time below maxMillis, drawn from the station's own random
+    // numbers and recorded to (or replayed from) the trace
+    public void sleepRandom(int maxMillis) throws InterruptedException {
+        if (maxMillis <= 0) {
+            return;
+        }
+        int sleepMillis = random.nextInt(maxMillis);
+        Thread.sleep(trace == null ? sleepMillis : trace.time(SimTrace.SLEEP, stationID, sleepMillis));
+    }
+
+    // Method for simulating Routing Station work during which the station is moving packages - returns false
+    // when the package group could not be finished because the output conveyors were full, or the station was
+    // interrupted while working it
+    public boolean doWork() {
         try {
-            System.out.println("\n*** Routing Station S" + stationID + ": CURRENTLY HOLDS BOTH - INPUT CONVOYOR AND OUTPUT CONVEYOR ***" +
-            "\n*** Routing Station S" + stationID + ": CURRENTLY WORKING - MOVING PACKAGES. ***");
-            Thread.sleep(randomSeed.nextInt(1000)); // Hold the conveyors for a random period of time to simulate work flow
-            workload--;
-            System.out.println("\n\t*** Routing Station S" + stationID + ": Package group completed - " + workload + " package groups remaining to move. ***\n");
-            if (workload == 0) {
-                System.out.println("\n*** Routing Station S" + stationID + ": going offline – work completed! BYE! ***\n");
+            log.record(EventLog.WORKING, stationID, -1, 0);
+            if (!service.isFree()) {
+                int workMillis = service.sample(random); // Hold the conveyors for the service time (up to 1000ms by default) to simulate work flow
+                Thread.sleep(trace == null ? workMillis : trace.time(SimTrace.WORK, stationID, workMillis));
+            }
+            if (packageFlow != null && !packageFlow.moveGroup(stationID, System.nanoTime())) {
+                log.record(EventLog.GROUP_BLOCKED, stationID, -1, 0);
+                return false; // output conveyors full - the group is finished on a later attempt
+            }
+            int left = workload.decrementAndGet();
+            stats.recordGroup(stationID);
+            if (tracker != null) {
+                tracker.groupCompleted();
+            }
+            log.record(EventLog.GROUP_COMPLETED, stationID, -1, left);
+            if (left == 0) {
+                if (packageFlow != null) {
+                    packageFlow.stationOffline(stationID, System.nanoTime());
+                }
+                stats.recordFinish(stationID, stats.wallMillis());
+                log.record(EventLog.WORK_COMPLETED, stationID, -1, 0);
             }
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            interrupted = true; // the group is dropped, and the station stops once it has let go of its conveyors
+            return false;
         }
+        return true;
     }
 
     // The run() method - this is what a Station does
     @Override
     public void run() {
-        System.out.println("\n*** ROUTING STATION S" + stationID + " Coming Online - Initializing Conveyors ***\n");
+        if (tracker != null) {
+            tracker.stationOnline(stationID);
+        }
+        try {
+            work();
+        } finally {
+            if (tracker != null) {
+                tracker.stationOffline(stationID);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt(); // passed on to whoever runs the thread
+            }
+        }
+    }
+
+    // Method to work the station's package groups until its workload is done or it is told to stop
+    private void work() {
+        log.record(EventLog.STATION_ONLINE, stationID, -1, 0);
 
         // Run the simulation on the station for its entire workload
-        while (workload > 0) {
-            // Loop until both locks are acquired
-            boolean isInputConveyorLocked = false;
-            boolean isOutputConveyorLocked = false;
-
-            while (!(isInputConveyorLocked && isOutputConveyorLocked)) {
-                isInputConveyorLocked = inputConveyor.lockConveyor(stationID);
-                if (isInputConveyorLocked) {
-                    System.out.println("\n\tRouting Station S" + stationID + ": Currently holds lock on input conveyor C" + inputConveyor.getID());
-                    isOutputConveyorLocked = outputConveyor.lockConveyor(stationID);
-                    if (isOutputConveyorLocked) {
-                        System.out.println("\n\tRouting Station S" + stationID + ": Currently holds lock on output conveyor C" + outputConveyor.getID());
-                        doWork();
-                        
-                        inputConveyor.unlockConveyor();
-                        
-                        System.out.println("\n\tRouting Station S" + stationID + ": Unlocks/releases input conveyor C" + inputConveyor.getID());
-                        
-                        outputConveyor.unlockConveyor();
-                        
-                        System.out.println("\n\tRouting Station S" + stationID + ": Unlocks/releases output conveyor C" + outputConveyor.getID());
-                    } else {
-                        System.out.println("\n\tRouting Station S" + stationID + ": UNABLE TO LOCK OUTPUT CONVEYOR C" + outputConveyor.getID() + 
-                        ".\n\t\tSYNCHRONIZATION ISSUE: Station S" + outputConveyor.getLockedBy() + " currently holds the lock on output\n\t\tconveyor C" + 
-                        outputConveyor.getID() + " - " + "Station S" + stationID + " releasing lock on input conveyor C" + inputConveyor.getID());
-
-                        inputConveyor.unlockConveyor();
-                        
-                        System.out.println("\n\tRouting Station S" + stationID + ": Unlocks/releases input conveyor C" + inputConveyor.getID());
-                        goToSleep();
-                    }
-                }
+        while (workload.get() > 0 && !stopping()) {
+            if (!swaps.isEmpty()) {
+                applySwaps();
+            }
+            // Block until all of the station's conveyors are held, in whatever way the strategy gets them
+            long waitStart = System.nanoTime();
+            if (trace != null) {
+                trace.awaitAcquireTurn(stationID);
+            }
+            strategy.acquire(this);
+            backoff.acquired(this);
+            long holdStart = System.nanoTime();
+            stats.recordWait(stationID, holdStart - waitStart);
+            if (metrics != null) {
+                metrics.recordAcquired(stationID, holdStart - waitStart);
+            }
+
+            // A station told to stop while it waited for its conveyors lets go of them without starting a group
+            boolean stopped = stopping();
+            boolean groupDone = !stopped && doWork();
+
+            for (int k = 0; k < conveyors.length; k++) {
+                unlockConveyor(k);
+            }
+            strategy.released(this);
+            long holdNanos = System.nanoTime() - holdStart;
+            stats.recordHold(stationID, holdNanos);
+            if (metrics != null) {
+                metrics.recordReleased(stationID, holdNanos);
+            }
+
+            // Back off after a held up group so the next station gets the chance to take packages off
+            if (!groupDone && !stopped) {
+                goToSleep();
             }
         }
 
-        System.out.println("\n*** ROUTING STATION S" + stationID + ": OFFLINE ***\n");
+        // A station taken offline, drained or aborted goes offline now, with package groups still left
+        if (workload.get() > 0) {
+            stats.recordFinish(stationID, stats.wallMillis());
+        }
+        if (offline && control != null) {
+            control.handOver(this, workload.getAndSet(0));
+        }
+        log.record(EventLog.STATION_OFFLINE, stationID, -1, 0);
     }
 }
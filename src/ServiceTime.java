@@ -0,0 +1,319 @@
+package src;
+import java.io.*;
+import java.util.*;
+
+// Class for how long a station takes to work one package group, in milliseconds. Samplers are built once from a
+// spec and then draw from the station's own random numbers without allocating: continuous distributions go through
+// a precomputed inverse-CDF table with linear interpolation, empirical ones through an alias table, so a sample is
+// one or two random numbers and a couple of array reads whatever the distribution.
+// Specs:
+//   uniform:MAX              - 0 to MAX - 1 ms, the original work time (uniform:0 makes work free)
+//   exponential:MEAN         - exponential with the given mean
+//   lognormal:MEDIAN:SIGMA   - lognormal with the given median and log standard deviation
+//   empirical:path.csv       - the values of a CSV file (value or value,weight per line), drawn by weight
+//   jam:P:MILLIS:SPEC        - SPEC, plus a MILLIS ms jam with probability P
+public abstract class ServiceTime {
+    private static final int TABLE_SIZE = 4096; // inverse-CDF points of the continuous distributions
+    private static final double TAIL = 1e-6; // the table stops at this share of the upper tail
+    private static final int MAX_MILLIS = 24 * 3600 * 1000;
+
+    private final String spec;
+
+    private ServiceTime(String spec) {
+        this.spec = spec;
+    }
+
+    // Method to draw a service time in milliseconds
+    public abstract int sample(SplittableRandom random);
+
+    // Method to get the largest time sample() can return, in milliseconds
+    public abstract int maxMillis();
+
+    // True when the service time is always 0, so the work needs no sleep or random number
+    public boolean isFree() {
+        return false;
+    }
+
+    // The spec the sampler was built from
+    public String describe() {
+        return spec;
+    }
+
+    // Method to get the original uniform work time below maxMillis
+    public static ServiceTime uniform(int maxMillis) {
+        return new Uniform(maxMillis);
+    }
+
+    // Method to build a sampler from a spec - see the class comment for the forms
+    public static ServiceTime parse(String spec) {
+        String[] parts = spec.split(":", 2);
+        String args = parts.length > 1 ? parts[1] : "";
+        switch (parts[0]) {
+            case "uniform":
+                return new Uniform((int) number(spec, args, "MAX"));
+            case "exponential": {
+                double mean = number(spec, args, "MEAN");
+                return new Quantiles(spec, u -> -mean * Math.log(1 - u));
+            }
+            case "lognormal": {
+                String[] values = args.split(":");
+                if (values.length != 2) {
+                    throw new IllegalArgumentException("Service time \"" + spec + "\" should be lognormal:MEDIAN:SIGMA");
+                }
+                double median = number(spec, values[0], "MEDIAN");
+                double sigma = number(spec, values[1], "SIGMA");
+                return new Quantiles(spec, u -> median * Math.exp(sigma * inverseNormal(u)));
+            }
+            case "empirical":
+                return Alias.read(spec, args);
+            case "jam": {
+                String[] values = args.split(":", 3);
+                if (values.length != 3) {
+                    throw new IllegalArgumentException("Service time \"" + spec + "\" should be jam:P:MILLIS:SPEC");
+                }
+                double probability = number(spec, values[0], "P");
+                if (probability > 1) {
+                    throw new IllegalArgumentException("The jam probability of \"" + spec + "\" must be between 0 and 1");
+                }
+                return new Jam(spec, probability, (int) number(spec, values[1], "MILLIS"), parse(values[2]));
+            }
+            default:
+                throw new IllegalArgumentException("Unknown service time \"" + spec
+                + "\" - expected uniform:MAX, exponential:MEAN, lognormal:MEDIAN:SIGMA, empirical:path or jam:P:MILLIS:SPEC");
+        }
+    }
+
+    private static double number(String spec, String text, String what) {
+        try {
+            double value = Double.parseDouble(text);
+            if (value >= 0 && value <= MAX_MILLIS) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Service time \"" + spec + "\" needs a number from 0 to " + MAX_MILLIS + " for " + what
+        + ", not \"" + text + "\"");
+    }
+
+    // Method for the inverse of the standard normal CDF (Acklam's rational approximation, relative error below
+    // 1.2e-9) - only used while building tables
+    static double inverseNormal(double p) {
+        final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02, 1.383577518672690e+02,
+        -3.066479806614716e+01, 2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02, 6.680131188771972e+01,
+        -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00, -2.549732539343734e+00,
+        4.374664141464968e+00, 2.938163982698783e+00};
+        final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00};
+        if (p < 0.02425) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        } else if (p > 1 - 0.02425) {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+        / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+
+    // Class for the original uniform work time
+    private static final class Uniform extends ServiceTime {
+        private final int maxMillis;
+
+        Uniform(int maxMillis) {
+            super("uniform:" + maxMillis);
+            this.maxMillis = maxMillis;
+        }
+
+        @Override
+        public int sample(SplittableRandom random) {
+            return maxMillis > 0 ? random.nextInt(maxMillis) : 0;
+        }
+
+        @Override
+        public int maxMillis() {
+            return Math.max(0, maxMillis - 1);
+        }
+
+        @Override
+        public boolean isFree() {
+            return maxMillis <= 0;
+        }
+    }
+
+    // Interface for the quantile function of a continuous distribution
+    private interface Quantile {
+        double at(double u);
+    }
+
+    // Class for a continuous distribution sampled through its inverse CDF at TABLE_SIZE + 1 evenly spaced points
+    private static final class Quantiles extends ServiceTime {
+        private final double[] table = new double[TABLE_SIZE + 1];
+
+        Quantiles(String spec, Quantile quantile) {
+            super(spec);
+            for (int i = 0; i <= TABLE_SIZE; i++) {
+                double u = Math.min(Math.max((double) i / TABLE_SIZE, TAIL * TAIL), 1 - TAIL);
+                table[i] = Math.min(quantile.at(u), MAX_MILLIS);
+            }
+        }
+
+        @Override
+        public int sample(SplittableRandom random) {
+            double u = random.nextDouble() * TABLE_SIZE;
+            int i = (int) u;
+            return (int) (table[i] + (u - i) * (table[i + 1] - table[i]) + 0.5);
+        }
+
+        @Override
+        public int maxMillis() {
+            return (int) (table[TABLE_SIZE] + 0.5); // quantiles only grow, so the last point is the largest
+        }
+    }
+
+    // Class for an empirical distribution - Vose's alias table, so a draw is one slot and one coin flip
+    private static final class Alias extends ServiceTime {
+        private final int[] value;
+        private final int[] alias;
+        private final double[] keep;
+
+        Alias(String spec, int[] value, double[] weight) {
+            super(spec);
+            int n = value.length;
+            this.value = value;
+            this.alias = new int[n];
+            this.keep = new double[n];
+            double total = 0;
+            for (double w : weight) {
+                total += w;
+            }
+            double[] scaled = new double[n];
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int numSmall = 0;
+            int numLarge = 0;
+            for (int i = 0; i < n; i++) {
+                scaled[i] = weight[i] * n / total;
+                if (scaled[i] < 1) {
+                    small[numSmall++] = i;
+                } else {
+                    large[numLarge++] = i;
+                }
+            }
+            while (numSmall > 0 && numLarge > 0) {
+                int s = small[--numSmall];
+                int l = large[--numLarge];
+                keep[s] = scaled[s];
+                alias[s] = l;
+                scaled[l] -= 1 - scaled[s];
+                if (scaled[l] < 1) {
+                    small[numSmall++] = l;
+                } else {
+                    large[numLarge++] = l;
+                }
+            }
+            while (numLarge > 0) {
+                keep[large[--numLarge]] = 1;
+            }
+            while (numSmall > 0) {
+                keep[small[--numSmall]] = 1; // only left over through rounding
+            }
+        }
+
+        @Override
+        public int sample(SplittableRandom random) {
+            int i = random.nextInt(value.length);
+            return random.nextDouble() < keep[i] ? value[i] : value[alias[i]];
+        }
+
+        @Override
+        public int maxMillis() {
+            int max = 0;
+            for (int v : value) {
+                max = Math.max(max, v);
+            }
+            return max;
+        }
+
+        // Method to read the CSV of an empirical spec - a first line that is not a number is taken as a header
+        static Alias read(String spec, String path) {
+            List<Integer> values = new ArrayList<>();
+            List<Double> weights = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+                String line;
+                int lineNumber = 0;
+                boolean first = true;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    int hash = line.indexOf('#');
+                    String[] fields = (hash >= 0 ? line.substring(0, hash) : line).trim().split("\\s*,\\s*");
+                    if (fields[0].isEmpty()) {
+                        continue;
+                    }
+                    boolean header = first;
+                    first = false;
+                    try {
+                        double value = Double.parseDouble(fields[0]);
+                        double weight = fields.length > 1 ? Double.parseDouble(fields[1]) : 1;
+                        if (value < 0 || value > MAX_MILLIS || weight < 0 || fields.length > 2) {
+                            throw new IllegalArgumentException(path + ":" + lineNumber + ": expected a time from 0 to " + MAX_MILLIS
+                            + " ms and an optional weight of at least 0");
+                        }
+                        values.add((int) Math.round(value));
+                        weights.add(weight);
+                    } catch (NumberFormatException e) {
+                        if (!header) {
+                            throw new IllegalArgumentException(path + ":" + lineNumber + ": expected a number but found \"" + line.trim() + "\"");
+                        }
+                    }
+                }
+            } catch (FileNotFoundException e) {
+                throw new IllegalArgumentException("Cannot read the service times of \"" + spec + "\" - " + path + " does not exist");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            double total = 0;
+            for (double weight : weights) {
+                total += weight;
+            }
+            if (total <= 0) {
+                throw new IllegalArgumentException(path + ": an empirical service time needs at least one value with a weight above 0");
+            }
+            int[] value = new int[values.size()];
+            double[] weight = new double[values.size()];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = values.get(i);
+                weight[i] = weights.get(i);
+            }
+            return new Alias(spec, value, weight);
+        }
+    }
+
+    // Class for jam injection - a jammed group takes the jam time on top of its normal service time
+    private static final class Jam extends ServiceTime {
+        private final double probability;
+        private final int jamMillis;
+        private final ServiceTime base;
+
+        Jam(String spec, double probability, int jamMillis, ServiceTime base) {
+            super(spec);
+            this.probability = probability;
+            this.jamMillis = jamMillis;
+            this.base = base;
+        }
+
+        @Override
+        public int sample(SplittableRandom random) {
+            int millis = base.sample(random);
+            return random.nextDouble() < probability ? millis + jamMillis : millis;
+        }
+
+        @Override
+        public int maxMillis() {
+            return probability > 0 ? base.maxMillis() + jamMillis : base.maxMillis();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package src;
+import java.io.*;
+import java.util.*;
+
+// Class for the service time of every station of a run. Most stations share one default sampler - --service, or
+// the original uniform work time below --max-work-ms - and stations with their own spec, from a "service SPEC"
+// section of the topology file or a line of --service-file, get theirs. Each distinct spec is built once, so a
+// million stations with the same lognormal share one table.
+// --service-file lines are "S SPEC" for station S or "A-B SPEC" for stations A to B; blank lines and everything
+// after a # are ignored, and a later line overrides an earlier one.
+public class ServiceTimes {
+    private final ServiceTime fallback;
+    private final ServiceTime[] perStation; // null while every station uses the default
+    private final Map<String, ServiceTime> built = new HashMap<>();
+
+    private ServiceTimes(ServiceTime fallback, int numStations, boolean heterogeneous) {
+        this.fallback = fallback;
+        this.perStation = heterogeneous ? new ServiceTime[numStations] : null;
+    }
+
+    // Method to give every station the same service time
+    public static ServiceTimes uniform(ServiceTime serviceTime) {
+        return new ServiceTimes(serviceTime, 0, false);
+    }
+
+    // Method to build the service times of a run from the options and the facility
+    public static ServiceTimes create(FacilityTopology topology, SimOptions options) throws IOException {
+        ServiceTime fallback = options.has("service") ? ServiceTime.parse(options.get("service", ""))
+        : ServiceTime.uniform(options.getInt("max-work-ms", 1000));
+        boolean heterogeneous = topology.hasServiceSpecs() || options.has("service-file");
+        ServiceTimes services = new ServiceTimes(fallback, topology.numStations(), heterogeneous);
+        if (topology.hasServiceSpecs()) {
+            for (int s = 0; s < topology.numStations(); s++) {
+                if (topology.serviceSpec(s) != null) {
+                    services.perStation[s] = services.build(topology.serviceSpec(s));
+                }
+            }
+        }
+        if (options.has("service-file")) {
+            services.readFile(options.get("service-file", ""));
+        }
+        return services;
+    }
+
+    private ServiceTime build(String spec) {
+        ServiceTime serviceTime = built.get(spec);
+        if (serviceTime == null) {
+            serviceTime = ServiceTime.parse(spec);
+            built.put(spec, serviceTime);
+        }
+        return serviceTime;
+    }
+
+    // Method to read the per-station lines of a --service-file
+    private void readFile(String path) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int hash = line.indexOf('#');
+                String[] tokens = (hash >= 0 ? line.substring(0, hash) : line).trim().split("\\s+");
+                if (tokens[0].isEmpty()) {
+                    continue;
+                }
+                if (tokens.length != 2) {
+                    throw new IllegalArgumentException(path + ":" + lineNumber + ": expected \"S SPEC\" or \"A-B SPEC\"");
+                }
+                String[] range = tokens[0].split("-", 2);
+                int first = station(path, lineNumber, range[0]);
+                int last = range.length > 1 ? station(path, lineNumber, range[1]) : first;
+                if (last < first) {
+                    throw new IllegalArgumentException(path + ":" + lineNumber + ": the range " + tokens[0] + " is empty");
+                }
+                ServiceTime serviceTime;
+                try {
+                    serviceTime = build(tokens[1]);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(path + ":" + lineNumber + ": " + e.getMessage());
+                }
+                Arrays.fill(perStation, first, last + 1, serviceTime);
+            }
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("Cannot read --service-file " + path + " - the file does not exist");
+        }
+    }
+
+    private int station(String path, int lineNumber, String token) {
+        try {
+            int stationID = Integer.parseInt(token);
+            if (stationID >= 0 && stationID < perStation.length) {
+                return stationID;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(path + ":" + lineNumber + ": expected a station from 0 to " + (perStation.length - 1)
+        + " but found \"" + token + "\"");
+    }
+
+    // Method to get the service time of a station
+    public ServiceTime of(int stationID) {
+        ServiceTime serviceTime = perStation == null ? null : perStation[stationID];
+        return serviceTime == null ? fallback : serviceTime;
+    }
+
+    // Method to get the largest time any station's service time can take, in milliseconds
+    public int maxMillis() {
+        int max = fallback.maxMillis();
+        for (ServiceTime serviceTime : built.values()) {
+            max = Math.max(max, serviceTime.maxMillis());
+        }
+        return max;
+    }
+
+    // Method to summarize the service times for the run header, e.g. "lognormal:200:0.5, 3 station(s) with their own"
+    public String describe() {
+        if (perStation == null) {
+            return fallback.describe();
+        }
+        int own = 0;
+        for (ServiceTime serviceTime : perStation) {
+            if (serviceTime != null) {
+                own++;
+            }
+        }
+        return fallback.describe() + ", " + own + " station(s) with their own";
+    }
+}
@@ -0,0 +1,176 @@
+package src;
+import java.io.*;
+import java.net.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Class for the coordinator of a sharded run (--mode=shard --shards=K). The facility is split into K blocks of
+// stations (see ShardPlan) and every block is run by its own worker process on this machine, started with the same
+// options, so each worker builds the same facility itself. The coordinator hands out the lease server ports, starts
+// all shards at once, collects the station figures as each shard finishes, and tells the workers to shut down once
+// every shard has reported - that is the global termination: with every workload done, no station can ask for a
+// boundary conveyor again.
+// Control protocol (one connection per worker): worker -> shard, lease port; coordinator -> K, the K ports, START;
+// worker -> DONE, its run time, its completed and total package groups, why it stopped early (empty when it did
+// not), then groups, retries, finish time, max wait, idle time and hold time of each of its stations;
+// coordinator -> SHUTDOWN.
+public class ShardCoordinator {
+    static final int START = 1;
+    static final int DONE = 2;
+    static final int SHUTDOWN = 3;
+    private static final int STARTUP_TIMEOUT_MS = 60_000;
+
+    // Method to run a facility over worker processes and print the combined summary
+    public static void run(FacilityTopology topology, SimOptions options) throws IOException, InterruptedException {
+        ShardPlan plan = new ShardPlan(topology, options.getInt("shards", 2));
+        String strategyName = options.get("strategy", "trylock");
+        if (!strategyName.equals("trylock") && !strategyName.equals("ordered")) {
+            throw new IllegalArgumentException("A sharded run needs the trylock or ordered strategy - the " + strategyName
+            + " strategy keeps its state inside one process");
+        }
+        if (options.get("backoff", "random").equals("park")) {
+            throw new IllegalArgumentException("The park back-off is woken by releases inside one process and cannot be used in a sharded run");
+        }
+        for (String option : new String[] {"packages", "metrics", "metrics-file", "record", "replay"}) {
+            if (options.has(option)) {
+                throw new IllegalArgumentException("--" + option + " cannot be used in a sharded run");
+            }
+        }
+        int numShards = plan.numShards();
+
+        PackageRoutingSim.printConfiguration(topology);
+        System.out.println("\nSeed: " + options.getLong("seed", 0));
+        System.out.println("Service times: " + ServiceTimes.create(topology, options).describe());
+        System.out.println("Shards: " + numShards + " worker processes, " + plan.boundaryCount() + " boundary conveyor(s) leased between them");
+
+        ServerSocket server = new ServerSocket(0, numShards, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(STARTUP_TIMEOUT_MS);
+        Process[] workers = new Process[numShards];
+        Socket[] controls = new Socket[numShards];
+        DataInputStream[] ins = new DataInputStream[numShards];
+        DataOutputStream[] outs = new DataOutputStream[numShards];
+        try {
+            for (int i = 0; i < numShards; i++) {
+                workers[i] = new ProcessBuilder(workerCommand(options, numShards, i, server.getLocalPort())).inheritIO().start();
+            }
+
+            // Wait for every worker to say which shard it runs and where its lease server listens
+            int[] ports = new int[numShards];
+            for (int i = 0; i < numShards; i++) {
+                Socket control;
+                try {
+                    control = server.accept();
+                } catch (SocketTimeoutException e) {
+                    throw new IOException("Not all shard workers started within " + STARTUP_TIMEOUT_MS / 1000 + " s");
+                }
+                DataInputStream in = new DataInputStream(new BufferedInputStream(control.getInputStream()));
+                int shard = in.readInt();
+                if (shard < 0 || shard >= numShards || controls[shard] != null) {
+                    control.close();
+                    throw new IOException("Unexpected hello from shard " + shard);
+                }
+                controls[shard] = control;
+                ins[shard] = in;
+                outs[shard] = new DataOutputStream(new BufferedOutputStream(control.getOutputStream()));
+                ports[shard] = in.readInt();
+            }
+
+            System.out.println("\n*** PACKAGE MANAGEMENT FACILITY SIMULATION BEGINS *** \n");
+            long startNanos = System.nanoTime();
+            for (DataOutputStream out : outs) {
+                out.writeInt(numShards);
+                for (int port : ports) {
+                    out.writeInt(port);
+                }
+                out.writeByte(START);
+                out.flush();
+            }
+
+            // Collect the figures of every shard - the run is over once the last one has reported
+            SimulationStats stats = new SimulationStats(topology.numStations());
+            long[] shardMillis = new long[numShards];
+            long completedGroups = 0;
+            long totalGroups = 0;
+            Set<String> stopReasons = new LinkedHashSet<>();
+            for (int i = 0; i < numShards; i++) {
+                try {
+                    if (ins[i].readByte() != DONE) {
+                        throw new IOException("Unexpected message from shard " + i);
+                    }
+                    shardMillis[i] = ins[i].readLong();
+                    completedGroups += ins[i].readLong();
+                    totalGroups += ins[i].readLong();
+                    String stopReason = ins[i].readUTF();
+                    if (!stopReason.isEmpty()) {
+                        stopReasons.add("shard " + i + " " + stopReason);
+                    }
+                    for (int s = plan.first(i); s < plan.end(i); s++) {
+                        stats.setStation(s, ins[i].readLong(), ins[i].readLong(), ins[i].readLong(), ins[i].readLong(), ins[i].readLong(),
+                        ins[i].readLong());
+                    }
+                } catch (EOFException e) {
+                    throw new IOException("Shard " + i + " stopped before reporting its stations");
+                }
+            }
+            stats.setElapsedTime((System.nanoTime() - startNanos) / 1_000_000);
+            stats.setConcurrencyBound(topology.concurrencyBound());
+            for (DataOutputStream out : outs) {
+                out.writeByte(SHUTDOWN);
+                out.flush();
+            }
+            for (Process worker : workers) {
+                worker.waitFor(10, TimeUnit.SECONDS);
+            }
+
+            if (stopReasons.isEmpty()) {
+                System.out.println("\n*** ALL WORKLOAD COMPLETED - SIMULATION IS SHUTTING DOWN ***");
+            } else {
+                System.out.println("\n*** SIMULATION STOPPED (" + String.join("; ", stopReasons) + ") WITH " + completedGroups + " OF "
+                + totalGroups + " PACKAGE GROUPS COMPLETED ***");
+            }
+            System.out.println("*** THE PACKAGE MANAGEMENT FACILITY SIMULATION HAS ENDED ***");
+            stats.print("wall clock, " + numShards + " shards, " + strategyName + " strategy, " + options.get("backoff", "random") + " back-off");
+            System.out.println("\nShards:");
+            for (int i = 0; i < numShards; i++) {
+                long groups = 0;
+                for (int s = plan.first(i); s < plan.end(i); s++) {
+                    groups += stats.getCompletedGroups(s);
+                }
+                System.out.println("\tShard " + i + ": stations S" + plan.first(i) + " to S" + (plan.end(i) - 1) + ", " + groups
+                + " package group(s), done after " + shardMillis[i] + " ms");
+            }
+        } finally {
+            for (Socket control : controls) {
+                if (control != null) {
+                    control.close();
+                }
+            }
+            server.close();
+            for (Process worker : workers) {
+                if (worker != null && worker.isAlive()) {
+                    worker.destroy();
+                }
+            }
+        }
+    }
+
+    // Method to build the command line of a worker - this JVM and class path, the same options and the shard to run
+    private static List<String> workerCommand(SimOptions options, int numShards, int shard, int port) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(PackageRoutingSim.class.getName());
+        for (String key : options.keys()) {
+            if (!key.equals("mode") && !key.equals("shards")) {
+                command.add("--" + key + "=" + options.get(key, ""));
+            }
+        }
+        command.add("--mode=shard-worker");
+        command.add("--shards=" + numShards);
+        command.add("--shard=" + shard);
+        command.add("--coordinator-port=" + port);
+        return command;
+    }
+}
@@ -0,0 +1,73 @@
+package src;
+
+// Class for how a facility is split over the worker processes of a sharded run. Shard i runs the stations with IDs
+// from first(i) up to end(i) - 1, a contiguous block, so on the ring only the conveyors where two blocks meet are
+// shared. Every conveyor is owned by the shard of its lowest numbered station; a conveyor that is also used by
+// stations of other shards is a boundary conveyor, and those stations lease it from the owner over a socket.
+// Coordinator and workers build the same plan from the same facility, so nothing but ports has to be sent.
+public class ShardPlan {
+    private final FacilityTopology topology;
+    private final int numShards;
+
+    // Constructor method - every shard needs at least one station
+    public ShardPlan(FacilityTopology topology, int numShards) {
+        if (numShards < 1 || numShards > topology.numStations()) {
+            throw new IllegalArgumentException("--shards must be between 1 and the " + topology.numStations() + " stations of the facility");
+        }
+        this.topology = topology;
+        this.numShards = numShards;
+    }
+
+    public int numShards() {
+        return numShards;
+    }
+
+    // Method to get the first station of a shard
+    public int first(int shard) {
+        return (int) ((long) topology.numStations() * shard / numShards);
+    }
+
+    // Method to get the station after the last one of a shard
+    public int end(int shard) {
+        return first(shard + 1);
+    }
+
+    // Method to find the shard that runs a station
+    public int shardOf(int stationID) {
+        int shard = (int) ((long) stationID * numShards / topology.numStations());
+        while (end(shard) <= stationID) {
+            shard++;
+        }
+        while (first(shard) > stationID) {
+            shard--;
+        }
+        return shard;
+    }
+
+    // Method to get the shard owning a conveyor - the shard of its lowest numbered station (users are listed in order)
+    public int owner(int conveyorID) {
+        return topology.userCount(conveyorID) == 0 ? 0 : shardOf(topology.user(conveyorID, 0));
+    }
+
+    // True when a conveyor is used by stations of more than one shard
+    public boolean isBoundary(int conveyorID) {
+        int owner = owner(conveyorID);
+        for (int k = 1; k < topology.userCount(conveyorID); k++) {
+            if (shardOf(topology.user(conveyorID, k)) != owner) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Method to count the boundary conveyors, for the run summary
+    public int boundaryCount() {
+        int count = 0;
+        for (int c = 0; c < topology.numConveyors(); c++) {
+            if (isBoundary(c)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
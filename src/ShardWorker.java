@@ -0,0 +1,207 @@
+package src;
+import java.io.*;
+import java.net.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+
+// Class for one worker process of a sharded run (--mode=shard-worker, started by ShardCoordinator). The worker
+// builds the same facility as the coordinator, runs the stations of its own shard on threads as in the threaded
+// mode, serves leases of the boundary conveyors it owns and uses RemoteConveyors for the ones owned elsewhere.
+// Once its stations are done it reports their figures, but keeps serving leases until the coordinator says every
+// shard is done, since stations of other shards may still need its conveyors.
+public class ShardWorker {
+    private final FacilityTopology topology;
+    private final SimOptions options;
+    private final ShardPlan plan;
+    private final int shard;
+    private final ConveyorObj[] conveyorArr;
+    private final ServerSocket leaseServer;
+    private volatile boolean closing = false;
+
+    // Constructor method - creates the conveyors this shard owns and opens the lease server for them
+    public ShardWorker(FacilityTopology topology, SimOptions options) throws IOException {
+        this.topology = topology;
+        this.options = options;
+        this.plan = new ShardPlan(topology, options.getInt("shards", 1));
+        this.shard = options.getInt("shard", 0);
+        this.conveyorArr = new ConveyorObj[topology.numConveyors()];
+        String conveyorKind = options.get("conveyor", "lock");
+        for (int c = 0; c < conveyorArr.length; c++) {
+            if (plan.owner(c) == shard) {
+                // A lease is taken and returned by different server threads, which a ReentrantLock does not allow
+                boolean leased = plan.isBoundary(c);
+                conveyorArr[c] = ConveyorObj.create(leased && conveyorKind.equals("lock") ? "atomic" : conveyorKind, c);
+            }
+        }
+        this.leaseServer = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+    }
+
+    // Method to run the worker: say hello to the coordinator, wait for the start, run the shard and report back
+    public void run() throws IOException, InterruptedException {
+        Thread acceptor = new Thread(this::acceptLeases, "lease-server-" + shard);
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        RemoteConveyor.Links links = null;
+        try (Socket control = new Socket(InetAddress.getLoopbackAddress(), options.getInt("coordinator-port", 0))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(control.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(control.getOutputStream()));
+            out.writeInt(shard);
+            out.writeInt(leaseServer.getLocalPort());
+            out.flush();
+
+            // The lease ports of all shards, then the start signal
+            int[] ports = new int[in.readInt()];
+            for (int i = 0; i < ports.length; i++) {
+                ports[i] = in.readInt();
+            }
+            links = new RemoteConveyor.Links(ports);
+            int first = plan.first(shard);
+            int end = plan.end(shard);
+            for (int s = first; s < end; s++) {
+                for (int k = 0; k < topology.conveyorCount(s); k++) {
+                    int c = topology.conveyor(s, k);
+                    if (conveyorArr[c] == null) {
+                        conveyorArr[c] = new RemoteConveyor(c, plan.owner(c), links);
+                    }
+                }
+            }
+            if (in.readByte() != ShardCoordinator.START) {
+                throw new IOException("Expected the start signal from the coordinator");
+            }
+
+            CompletionTracker tracker = new CompletionTracker(topology, first, end);
+            SimulationStats stats = runShard(first, end, tracker);
+
+            out.writeByte(ShardCoordinator.DONE);
+            out.writeLong(stats.wallMillis());
+            out.writeLong(tracker.completedGroups());
+            out.writeLong(tracker.totalGroups());
+            out.writeUTF(tracker.isComplete() ? "" : tracker.getStopReason());
+            for (int s = first; s < end; s++) {
+                out.writeLong(stats.getCompletedGroups(s));
+                out.writeLong(stats.getRetries(s));
+                out.writeLong(stats.getFinishTime(s));
+                out.writeLong(stats.getMaxWaitNanos(s));
+                out.writeLong(stats.getIdleNanos(s));
+                out.writeLong(stats.getHoldNanos(s));
+            }
+            out.flush();
+            if (in.readByte() != ShardCoordinator.SHUTDOWN) {
+                throw new IOException("Expected the shutdown signal from the coordinator");
+            }
+        } finally {
+            closing = true;
+            leaseServer.close();
+            if (links != null) {
+                links.close();
+            }
+        }
+    }
+
+    // Method to run the stations of the shard until their workloads are done or the tracker stops them - each
+    // station gets the same random numbers it would get in an unsharded run with the same seed
+    private SimulationStats runShard(int first, int end, CompletionTracker tracker) throws IOException, InterruptedException {
+        ConveyorAcquisitionStrategy strategy = ConveyorAcquisitionStrategy.create(options.get("strategy", "trylock"), topology);
+        BackoffPolicy backoff = BackoffPolicy.create(options.get("backoff", "random"), topology);
+        ServiceTimes services = ServiceTimes.create(topology, options);
+        SimulationStats stats = SimulationStats.forThreads(topology.numStations(), 0);
+        String logFile = options.get("log-file", null);
+        PrintStream logStream = null;
+        EventLog log = EventLog.disabled();
+        if (logFile != null) {
+            try {
+                logStream = new PrintStream(new FileOutputStream(logFile + "." + shard), false);
+                log = new EventLog(EventLog.parseLevel(options.get("log", "full")), logStream);
+            } catch (FileNotFoundException e) {
+                System.out.println("Shard " + shard + " cannot write its log to " + logFile + "." + shard);
+            }
+        }
+
+        tracker.configure(options, conveyorArr);
+        ExecutorService threadController = PackageRoutingSim.createExecutor(options.get("executor", "platform"), end - first);
+        SplittableRandom seeds = new SplittableRandom(options.getLong("seed", 0));
+        for (int s = 0; s < first; s++) {
+            seeds.split();
+        }
+        for (int s = first; s < end; s++) {
+            RoutingStation station = PackageRoutingSim.createStation(topology, s, conveyorArr, options, services, strategy, stats, log);
+            station.setRandom(seeds.split());
+            station.setBackoff(backoff);
+            station.setTracker(tracker);
+            threadController.execute(station);
+        }
+        threadController.shutdown();
+        tracker.awaitCompletion();
+        if (!tracker.isComplete()) {
+            System.out.println("Shard " + shard + " stopped early (" + tracker.getStopReason() + ") with " + tracker.completedGroups() + " of "
+            + tracker.totalGroups() + " package groups completed");
+        }
+
+        if (logStream != null) {
+            log.close();
+            logStream.close();
+        }
+        return stats;
+    }
+
+    // Method to accept lease connections - one serving thread per connecting station
+    private void acceptLeases() {
+        while (!closing) {
+            try {
+                Socket socket = leaseServer.accept();
+                socket.setTcpNoDelay(true);
+                Thread server = new Thread(() -> serveLeases(socket), "lease-" + socket.getPort());
+                server.setDaemon(true);
+                server.start();
+            } catch (IOException e) {
+                if (!closing) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+        }
+    }
+
+    // Method to answer the lease requests of one remote station until it hangs up
+    private void serveLeases(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    return;
+                }
+                int conveyorID = in.readInt();
+                int stationID = in.readInt();
+                if (conveyorID < 0 || conveyorID >= conveyorArr.length || plan.owner(conveyorID) != shard) {
+                    throw new IOException("Shard " + shard + " does not own conveyor C" + conveyorID);
+                }
+                ConveyorObj conveyor = conveyorArr[conveyorID];
+                int reply;
+                switch (op) {
+                    case RemoteConveyor.TRY_LOCK:
+                        reply = conveyor.lockConveyor(stationID) ? stationID : conveyor.getLockedBy();
+                        break;
+                    case RemoteConveyor.LOCK:
+                        conveyor.lockConveyorBlocking(stationID);
+                        reply = stationID;
+                        break;
+                    case RemoteConveyor.UNLOCK:
+                        conveyor.unlockConveyor();
+                        reply = ConveyorObj.FREE;
+                        break;
+                    default:
+                        throw new IOException("Unknown lease request " + op);
+                }
+                out.writeInt(reply);
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!closing) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package src;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+// Class for the checkpoints of a virtual clock run, kept in one memory-mapped snapshot file. Stations and conveyors
+// are split into blocks of 64, and the run marks a block dirty whenever it changes one of its entries. The first
+// checkpoint writes every block; each later one appends only the blocks dirtied since, plus the clock, the event
+// queue and the seed of the random numbers the run goes on with. The state at checkpoint K is rebuilt by laying
+// down the blocks of checkpoints 0 to K in turn, so a run can be resumed, or forked, from any of them.
+// A checkpoint is written and forced to disk before the header is updated to include it, so a run that dies while
+// writing one leaves the earlier checkpoints readable.
+//
+// File layout (little endian): a 64-byte header - magic, version, stations, conveyors, checkpoint count, the end of
+// the last complete checkpoint and the virtual milliseconds between checkpoints - followed by the checkpoints. Each
+// checkpoint is a 56-byte header (time, steps, seed, next event order, length, queue size, number of station and
+// conveyor blocks), the queue slots in heap order (time, order, event), the station blocks (block number, then per
+// station the workload, next waiter, wait start and the six SimulationStats figures) and the conveyor blocks (block
+// number, then per conveyor the owner and the first waiter).
+public class SimCheckpoint {
+    static final int BLOCK_SHIFT = 6; // 64 stations or conveyors per block - a 4 KB page of station records
+
+    private static final int MAGIC = 0x4B535250; // "PRSK"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int COUNT = 16; // header offsets
+    private static final int END = 24;
+    private static final int EVERY = 32;
+    private static final int RECORD_BYTES = 56;
+    private static final int EVENT_BYTES = 20;
+    private static final int STATION_BYTES = 64;
+    private static final int CONVEYOR_BYTES = 8;
+    private static final long WINDOW = 1L << 26; // checkpoints are mapped 64 MB at a time
+
+    private final String path;
+    private final FileChannel channel;
+    private final MappedByteBuffer header; // null when only reading
+    private final int numStations;
+    private final int numConveyors;
+    private final long everyMillis;
+    private final List<Long> offsets = new ArrayList<>();
+    private final List<Long> times = new ArrayList<>();
+    private final List<Long> steps = new ArrayList<>();
+    private final List<Long> seeds = new ArrayList<>();
+    private long end = HEADER_BYTES;
+    private long bytesWritten = 0;
+    private long writeNanos = 0;
+
+    private SimCheckpoint(String path, FileChannel channel, MappedByteBuffer header, int numStations, int numConveyors, long everyMillis) {
+        this.path = path;
+        this.channel = channel;
+        this.header = header;
+        this.numStations = numStations;
+        this.numConveyors = numConveyors;
+        this.everyMillis = everyMillis;
+    }
+
+    // Method to start a new snapshot file for a run of the given facility, checkpointed every given virtual milliseconds
+    public static SimCheckpoint create(String path, FacilityTopology topology, long everyMillis) throws IOException {
+        if (everyMillis <= 0) {
+            throw new IllegalArgumentException("--checkpoint-every-ms must be at least 1");
+        }
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, topology.numStations());
+        header.putInt(12, topology.numConveyors());
+        header.putInt(COUNT, 0);
+        header.putLong(END, HEADER_BYTES);
+        header.putLong(EVERY, everyMillis);
+        header.force();
+        return new SimCheckpoint(path, channel, header, topology.numStations(), topology.numConveyors(), everyMillis);
+    }
+
+    // Method to open a snapshot file to resume or fork from - only the complete checkpoints are read
+    public static SimCheckpoint open(String path) throws IOException {
+        if (!Files.isRegularFile(Paths.get(path))) {
+            throw new IllegalArgumentException("Cannot read the checkpoint file " + path + " - it does not exist");
+        }
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        if (channel.size() < HEADER_BYTES) {
+            channel.close();
+            throw new IllegalArgumentException(path + " is not a checkpoint file - it is too short");
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IllegalArgumentException(path + " is not a version " + VERSION + " checkpoint file");
+        }
+        SimCheckpoint checkpoint = new SimCheckpoint(path, channel, null, header.getInt(8), header.getInt(12), header.getLong(EVERY));
+        long end = Math.min(header.getLong(END), channel.size());
+        for (long offset = HEADER_BYTES; offset + RECORD_BYTES <= end; ) {
+            MappedByteBuffer record = channel.map(FileChannel.MapMode.READ_ONLY, offset, RECORD_BYTES);
+            record.order(ByteOrder.LITTLE_ENDIAN);
+            long length = record.getLong(32);
+            if (length < RECORD_BYTES || offset + length > end) {
+                break;
+            }
+            checkpoint.add(offset, record.getLong(0), record.getLong(8), record.getLong(16));
+            offset += length;
+            checkpoint.end = offset;
+        }
+        if (checkpoint.count() == 0) {
+            channel.close();
+            throw new IllegalArgumentException(path + " holds no complete checkpoint");
+        }
+        return checkpoint;
+    }
+
+    private void add(long offset, long time, long stepCount, long seed) {
+        offsets.add(offset);
+        times.add(time);
+        steps.add(stepCount);
+        seeds.add(seed);
+    }
+
+    public int count() {
+        return offsets.size();
+    }
+
+    // The virtual milliseconds between checkpoints
+    public long everyMillis() {
+        return everyMillis;
+    }
+
+    // The virtual time of a checkpoint, in milliseconds
+    public long time(int index) {
+        return times.get(index);
+    }
+
+    // The number of events the run had processed at a checkpoint
+    public long steps(int index) {
+        return steps.get(index);
+    }
+
+    // The seed of the random numbers the run went on with after a checkpoint
+    public long seed(int index) {
+        return seeds.get(index);
+    }
+
+    // Method to check that a checkpoint is resumed on the facility it was written for, and that it exists
+    public void check(FacilityTopology topology, int index) {
+        if (topology.numStations() != numStations || topology.numConveyors() != numConveyors) {
+            throw new IllegalArgumentException("The checkpoints in " + path + " were written for " + numStations + " stations and "
+            + numConveyors + " conveyors, not " + topology.numStations() + " and " + topology.numConveyors());
+        }
+        if (index < 0 || index >= count()) {
+            throw new IllegalArgumentException(path + " holds checkpoints 0 to " + (count() - 1) + ", not " + index);
+        }
+    }
+
+    // Class for reading or writing a run of bytes of the file through a sliding mapped window
+    private final class Cursor {
+        private final FileChannel.MapMode mode;
+        private final long limit;
+        private final List<MappedByteBuffer> mapped = new ArrayList<>();
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        Cursor(FileChannel.MapMode mode, long start, long limit) {
+            this.mode = mode;
+            this.position = start;
+            this.limit = limit;
+        }
+
+        // Method to get the window positioned at the next bytes, mapping a new one when they run past its end -
+        // no single read or write is larger than a block, so they always fit in one window
+        ByteBuffer next(int bytes) throws IOException {
+            if (window == null || position + bytes > windowStart + window.capacity()) {
+                windowStart = position;
+                window = channel.map(mode, position, Math.min(WINDOW, limit - position));
+                window.order(ByteOrder.LITTLE_ENDIAN);
+                mapped.add(window);
+            }
+            window.position((int) (position - windowStart));
+            position += bytes;
+            return window;
+        }
+
+        void skip(long bytes) {
+            position += bytes;
+        }
+
+        void force() {
+            for (MappedByteBuffer buffer : mapped) {
+                buffer.force();
+            }
+        }
+    }
+
+    private int blockSize(int block, int total) {
+        return Math.min(1 << BLOCK_SHIFT, total - (block << BLOCK_SHIFT));
+    }
+
+    // Method to append a checkpoint: the clock, the seed the run goes on with and the whole event queue, then the
+    // station and conveyor blocks marked dirty, whose marks are cleared
+    void append(long time, long stepCount, long seed, EventQueue events, int[] workload, int[] nextWaiter, long[] waitStart,
+    SimulationStats stats, boolean[] dirtyStations, int[] conveyorOwner, int[] firstWaiter, boolean[] dirtyConveyors) throws IOException {
+        long startNanos = System.nanoTime();
+        int stationBlocks = 0;
+        int conveyorBlocks = 0;
+        long length = RECORD_BYTES + (long) events.size() * EVENT_BYTES;
+        for (int b = 0; b < dirtyStations.length; b++) {
+            if (dirtyStations[b]) {
+                stationBlocks++;
+                length += 4 + (long) blockSize(b, numStations) * STATION_BYTES;
+            }
+        }
+        for (int b = 0; b < dirtyConveyors.length; b++) {
+            if (dirtyConveyors[b]) {
+                conveyorBlocks++;
+                length += 4 + (long) blockSize(b, numConveyors) * CONVEYOR_BYTES;
+            }
+        }
+
+        Cursor out = new Cursor(FileChannel.MapMode.READ_WRITE, end, end + length);
+        out.next(RECORD_BYTES).putLong(time).putLong(stepCount).putLong(seed).putLong(events.nextOrder()).putLong(length)
+        .putInt(events.size()).putInt(stationBlocks).putInt(conveyorBlocks).putInt(0);
+        for (int i = 0; i < events.size(); i++) {
+            out.next(EVENT_BYTES).putLong(events.timeAt(i)).putLong(events.orderAt(i)).putInt(events.eventAt(i));
+        }
+        for (int b = 0; b < dirtyStations.length; b++) {
+            if (dirtyStations[b]) {
+                int first = b << BLOCK_SHIFT;
+                int size = blockSize(b, numStations);
+                ByteBuffer buffer = out.next(4 + size * STATION_BYTES).putInt(b);
+                for (int s = first; s < first + size; s++) {
+                    buffer.putInt(workload[s]).putInt(nextWaiter[s]).putLong(waitStart[s]).putLong(stats.getCompletedGroups(s))
+                    .putLong(stats.getRetries(s)).putLong(stats.getFinishTime(s)).putLong(stats.getMaxWaitNanos(s))
+                    .putLong(stats.getIdleNanos(s)).putLong(stats.getHoldNanos(s));
+                }
+                dirtyStations[b] = false;
+            }
+        }
+        for (int b = 0; b < dirtyConveyors.length; b++) {
+            if (dirtyConveyors[b]) {
+                int first = b << BLOCK_SHIFT;
+                int size = blockSize(b, numConveyors);
+                ByteBuffer buffer = out.next(4 + size * CONVEYOR_BYTES).putInt(b);
+                for (int c = first; c < first + size; c++) {
+                    buffer.putInt(conveyorOwner[c]).putInt(firstWaiter[c]);
+                }
+                dirtyConveyors[b] = false;
+            }
+        }
+        out.force();
+
+        // Only now is the checkpoint made part of the file
+        add(end, time, stepCount, seed);
+        end += length;
+        header.putInt(COUNT, count());
+        header.putLong(END, end);
+        header.force();
+        bytesWritten += length;
+        writeNanos += System.nanoTime() - startNanos;
+    }
+
+    // Method to rebuild the state of the run at a checkpoint into the given arrays, stats and event queue
+    void restore(int index, EventQueue events, int[] workload, int[] nextWaiter, long[] waitStart, SimulationStats stats,
+    int[] conveyorOwner, int[] firstWaiter) throws IOException {
+        for (int k = 0; k <= index; k++) {
+            long offset = offsets.get(k);
+            Cursor in = new Cursor(FileChannel.MapMode.READ_ONLY, offset, k + 1 < count() ? offsets.get(k + 1) : end);
+            ByteBuffer record = in.next(RECORD_BYTES);
+            record.position(record.position() + 24); // time, steps and seed, read when the file was opened
+            long nextOrder = record.getLong();
+            record.getLong(); // length
+            int queueSize = record.getInt();
+            int stationBlocks = record.getInt();
+            int conveyorBlocks = record.getInt();
+            if (k < index) {
+                in.skip((long) queueSize * EVENT_BYTES);
+            } else {
+                long[] eventTimes = new long[queueSize];
+                long[] eventOrder = new long[queueSize];
+                int[] eventValues = new int[queueSize];
+                for (int i = 0; i < queueSize; i++) {
+                    ByteBuffer event = in.next(EVENT_BYTES);
+                    eventTimes[i] = event.getLong();
+                    eventOrder[i] = event.getLong();
+                    eventValues[i] = event.getInt();
+                }
+                events.restore(eventTimes, eventOrder, eventValues, queueSize, nextOrder);
+            }
+            for (int i = 0; i < stationBlocks; i++) {
+                int b = in.next(4).getInt();
+                int first = b << BLOCK_SHIFT;
+                int size = blockSize(b, numStations);
+                ByteBuffer buffer = in.next(size * STATION_BYTES);
+                for (int s = first; s < first + size; s++) {
+                    workload[s] = buffer.getInt();
+                    nextWaiter[s] = buffer.getInt();
+                    waitStart[s] = buffer.getLong();
+                    stats.setStation(s, buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+                }
+            }
+            for (int i = 0; i < conveyorBlocks; i++) {
+                int b = in.next(4).getInt();
+                int first = b << BLOCK_SHIFT;
+                int size = blockSize(b, numConveyors);
+                ByteBuffer buffer = in.next(size * CONVEYOR_BYTES);
+                for (int c = first; c < first + size; c++) {
+                    conveyorOwner[c] = buffer.getInt();
+                    firstWaiter[c] = buffer.getInt();
+                }
+            }
+        }
+    }
+
+    // Method to summarize what was written, e.g. "12 checkpoint(s) written to run.ckpt (41.2 MB in 310 ms)"
+    public String describe() {
+        return count() + " checkpoint(s) written to " + path + String.format(Locale.ROOT, " (%.1f MB in %d ms)", bytesWritten / 1e6,
+        writeNanos / 1_000_000);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
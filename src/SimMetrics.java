@@ -0,0 +1,310 @@
+package src;
+import java.io.*;
+import java.lang.invoke.*;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.*;
+import javax.management.*;
+
+// Class for the live metrics of a threaded run. Stations report every acquisition, failed attempt, back-off and
+// release. Each station's counters sit in their own 128-byte slot of one array and are only written by that
+// station; the counters take the first 40 bytes of a slot, so those of neighbouring stations are at least 88 bytes
+// apart and never share a cache line, wherever the array starts. A station adds to its own counters with an opaque
+// read and a release write - there is one writer, so no CAS is needed - and readers use acquire reads, so a
+// counter read from JMX or the snapshot thread is never torn and never older than what the station last wrote
+// before its previous release. Lock wait and hold times go into histograms striped by station. Facility totals and
+// per-conveyor utilization are summed up when somebody reads them, which keeps the recording side to a few adds
+// and two histogram increments, with no allocation and no shared counters.
+// The metrics can be read while the run is going through JMX (src:type=SimMetrics) and dumped as periodic CSV or
+// JSON-lines snapshots.
+public class SimMetrics implements SimMetricsMXBean {
+    private static final String OBJECT_NAME = "src:type=SimMetrics";
+    private static final int SLOT = 16; // longs per station - 128 bytes
+    private static final VarHandle COUNTER = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int ACQUISITIONS = 0;
+    private static final int FAILURES = 1;
+    private static final int BACKOFFS = 2;
+    private static final int WAIT_NANOS = 3;
+    private static final int HOLD_NANOS = 4;
+
+    private final SimulationStats stats;
+    private final FacilityTopology topology;
+    private final long startNanos = System.nanoTime();
+    private final int numConveyors;
+    private final long[] stationCounters;
+    private final LatencyHistogram[] lockWait;
+    private final LatencyHistogram[] lockHold;
+
+    private ScheduledExecutorService snapshotTimer;
+    private PrintStream snapshotOut;
+    private boolean snapshotJson;
+
+    // Constructor method - the stats supply the completed package group counts, the topology which stations use which conveyor
+    public SimMetrics(FacilityTopology topology, SimulationStats stats) {
+        this.stats = stats;
+        this.topology = topology;
+        this.numConveyors = topology.numConveyors();
+        this.stationCounters = new long[topology.numStations() * SLOT];
+        int stripes = Integer.highestOneBit(Math.min(64, 2 * Runtime.getRuntime().availableProcessors() - 1)) * 2;
+        this.lockWait = new LatencyHistogram[stripes];
+        this.lockHold = new LatencyHistogram[stripes];
+        for (int i = 0; i < stripes; i++) {
+            lockWait[i] = new LatencyHistogram();
+            lockHold[i] = new LatencyHistogram();
+        }
+    }
+
+    // Method for a station that now holds both of its conveyors after waiting waitNanos for them
+    public void recordAcquired(int stationID, long waitNanos) {
+        add(stationID, ACQUISITIONS, 1);
+        add(stationID, WAIT_NANOS, waitNanos);
+        lockWait[stationID & (lockWait.length - 1)].record(waitNanos);
+    }
+
+    // Method for a station that released both of its conveyors after holding them for holdNanos
+    public void recordReleased(int stationID, long holdNanos) {
+        add(stationID, HOLD_NANOS, holdNanos);
+        lockHold[stationID & (lockHold.length - 1)].record(holdNanos);
+    }
+
+    // Method for a failed or blocked attempt at the station's conveyors
+    public void recordFailedAttempt(int stationID) {
+        add(stationID, FAILURES, 1);
+    }
+
+    // Method for a station that backs off before trying again
+    public void recordBackoff(int stationID) {
+        add(stationID, BACKOFFS, 1);
+    }
+
+    // Method for a station to add to one of its own counters - only the station writes its slot
+    private void add(int stationID, int counter, long amount) {
+        int i = stationID * SLOT + counter;
+        COUNTER.setRelease(stationCounters, i, (long) COUNTER.getOpaque(stationCounters, i) + amount);
+    }
+
+    // Method to read a station's counter from any thread
+    private long read(int stationID, int counter) {
+        return (long) COUNTER.getAcquire(stationCounters, stationID * SLOT + counter);
+    }
+
+    // Method to add up one counter over all stations
+    private long total(int counter) {
+        long total = 0;
+        for (int s = 0; s < stationCounters.length / SLOT; s++) {
+            total += read(s, counter);
+        }
+        return total;
+    }
+
+    // Method to merge the striped histograms for reading
+    private static LatencyHistogram merged(LatencyHistogram[] stripes) {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (LatencyHistogram stripe : stripes) {
+            merged.add(stripe);
+        }
+        return merged;
+    }
+
+    // Method to get how long each conveyor has been held, from the hold times of the stations using it
+    private long[] conveyorHeldNanos() {
+        long[] held = new long[numConveyors];
+        for (int c = 0; c < numConveyors; c++) {
+            for (int k = 0; k < topology.userCount(c); k++) {
+                held[c] += read(topology.user(c, k), HOLD_NANOS);
+            }
+        }
+        return held;
+    }
+
+    // Method to register the metrics with the platform MBean server, replacing a previous run's registration
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Method to start writing a snapshot line to the file every intervalMillis - format is csv or json
+    public void startSnapshots(String path, String format, long intervalMillis) throws IOException {
+        if (!format.equals("csv") && !format.equals("json")) {
+            throw new IllegalArgumentException("Unknown metrics format \"" + format + "\" - expected csv or json");
+        }
+        snapshotJson = format.equals("json");
+        snapshotOut = new PrintStream(new FileOutputStream(path), true);
+        if (!snapshotJson) {
+            snapshotOut.println("elapsed_ms,completed_groups,acquisitions,failed_attempts,backoffs,wait_p50_ms,wait_p99_ms,wait_max_ms,"
+            + "hold_p50_ms,hold_p99_ms,hold_max_ms,mean_conveyor_utilization,max_conveyor_utilization");
+        }
+        snapshotTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotTimer.scheduleAtFixedRate(this::writeSnapshot, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Method to write a last snapshot and stop the snapshots and the JMX registration
+    public void stop() {
+        if (snapshotTimer != null) {
+            snapshotTimer.shutdown();
+            try {
+                snapshotTimer.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writeSnapshot();
+            snapshotOut.close();
+            snapshotTimer = null;
+        }
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void writeSnapshot() {
+        double[] utilization = utilization();
+        LatencyHistogram wait = merged(lockWait);
+        LatencyHistogram hold = merged(lockHold);
+        if (snapshotJson) {
+            snapshotOut.printf(Locale.ROOT, "{\"elapsed_ms\":%d,\"completed_groups\":%d,\"acquisitions\":%d,\"failed_attempts\":%d,\"backoffs\":%d,"
+            + "\"wait_p50_ms\":%.3f,\"wait_p99_ms\":%.3f,\"wait_max_ms\":%.3f,\"hold_p50_ms\":%.3f,\"hold_p99_ms\":%.3f,\"hold_max_ms\":%.3f,"
+            + "\"mean_conveyor_utilization\":%.4f,\"max_conveyor_utilization\":%.4f}%n", getElapsedMillis(), getCompletedGroups(),
+            getAcquisitions(), getFailedAttempts(), getBackoffs(), wait.percentile(50) / 1e6, wait.percentile(99) / 1e6, wait.max() / 1e6,
+            hold.percentile(50) / 1e6, hold.percentile(99) / 1e6, hold.max() / 1e6, utilization[0], utilization[1]);
+        } else {
+            snapshotOut.printf(Locale.ROOT, "%d,%d,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.4f,%.4f%n", getElapsedMillis(), getCompletedGroups(),
+            getAcquisitions(), getFailedAttempts(), getBackoffs(), wait.percentile(50) / 1e6, wait.percentile(99) / 1e6, wait.max() / 1e6,
+            hold.percentile(50) / 1e6, hold.percentile(99) / 1e6, hold.max() / 1e6, utilization[0], utilization[1]);
+        }
+    }
+
+    // Method to get the mean and max share of the elapsed time the conveyors have been held
+    private double[] utilization() {
+        long elapsed = Math.max(1, System.nanoTime() - startNanos);
+        double sum = 0;
+        double max = 0;
+        long[] held = conveyorHeldNanos();
+        for (int c = 0; c < numConveyors; c++) {
+            double share = held[c] / (double) elapsed;
+            sum += share;
+            max = Math.max(max, share);
+        }
+        return new double[] {numConveyors == 0 ? 0 : sum / numConveyors, max};
+    }
+
+    // Method to print the metrics part of the run summary
+    public void print() {
+        double[] utilization = utilization();
+        System.out.println("\nMetrics:");
+        System.out.println("\tAcquisitions: " + getAcquisitions() + ", failed attempts: " + getFailedAttempts() + ", back-offs: " + getBackoffs());
+        System.out.println("\tLock wait: " + merged(lockWait).summaryMillis());
+        System.out.println("\tLock hold: " + merged(lockHold).summaryMillis());
+        System.out.printf(Locale.ROOT, "\tConveyor utilization: mean %.1f%%, max %.1f%%%n", utilization[0] * 100, utilization[1] * 100);
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    @Override
+    public long getCompletedGroups() {
+        return stats.totalGroups();
+    }
+
+    @Override
+    public long getAcquisitions() {
+        return total(ACQUISITIONS);
+    }
+
+    @Override
+    public long getFailedAttempts() {
+        return total(FAILURES);
+    }
+
+    @Override
+    public long getBackoffs() {
+        return total(BACKOFFS);
+    }
+
+    @Override
+    public double getLockWaitP50Millis() {
+        return merged(lockWait).percentile(50) / 1e6;
+    }
+
+    @Override
+    public double getLockWaitP99Millis() {
+        return merged(lockWait).percentile(99) / 1e6;
+    }
+
+    @Override
+    public double getLockWaitMaxMillis() {
+        return merged(lockWait).max() / 1e6;
+    }
+
+    @Override
+    public double getLockHoldP50Millis() {
+        return merged(lockHold).percentile(50) / 1e6;
+    }
+
+    @Override
+    public double getLockHoldP99Millis() {
+        return merged(lockHold).percentile(99) / 1e6;
+    }
+
+    @Override
+    public double getLockHoldMaxMillis() {
+        return merged(lockHold).max() / 1e6;
+    }
+
+    @Override
+    public double getMeanConveyorUtilization() {
+        return utilization()[0];
+    }
+
+    @Override
+    public double getMaxConveyorUtilization() {
+        return utilization()[1];
+    }
+
+    @Override
+    public String describeStation(int stationID) {
+        if (stationID < 0 || stationID >= topology.numStations()) {
+            return "No station S" + stationID;
+        }
+        return String.format(Locale.ROOT, "Station S%d: %d acquisitions, %d failed attempts, %d back-offs, %.1f ms waiting, %.1f ms holding, %d groups completed",
+        stationID, read(stationID, ACQUISITIONS), read(stationID, FAILURES), read(stationID, BACKOFFS),
+        read(stationID, WAIT_NANOS) / 1e6, read(stationID, HOLD_NANOS) / 1e6, stats.getCompletedGroups(stationID));
+    }
+
+    @Override
+    public String describeConveyor(int conveyorID) {
+        if (conveyorID < 0 || conveyorID >= numConveyors) {
+            return "No conveyor C" + conveyorID;
+        }
+        long acquisitions = 0;
+        StringBuilder users = new StringBuilder();
+        for (int k = 0; k < topology.userCount(conveyorID); k++) {
+            int stationID = topology.user(conveyorID, k);
+            acquisitions += read(stationID, ACQUISITIONS);
+            users.append(k == 0 ? "S" : ", S").append(stationID);
+        }
+        long elapsed = Math.max(1, System.nanoTime() - startNanos);
+        return String.format(Locale.ROOT, "Conveyor C%d: used by %s, %d acquisitions, held %.1f%% of the time", conveyorID,
+        users.length() == 0 ? "no station" : users, acquisitions,
+        conveyorHeldNanos()[conveyorID] * 100.0 / elapsed);
+    }
+}
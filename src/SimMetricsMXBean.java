@@ -0,0 +1,35 @@
+package src;
+
+// Interface for the JMX view of a running simulation's metrics, registered as src:type=SimMetrics
+public interface SimMetricsMXBean {
+    long getElapsedMillis();
+
+    long getCompletedGroups();
+
+    long getAcquisitions();
+
+    long getFailedAttempts();
+
+    long getBackoffs();
+
+    double getLockWaitP50Millis();
+
+    double getLockWaitP99Millis();
+
+    double getLockWaitMaxMillis();
+
+    double getLockHoldP50Millis();
+
+    double getLockHoldP99Millis();
+
+    double getLockHoldMaxMillis();
+
+    double getMeanConveyorUtilization();
+
+    double getMaxConveyorUtilization();
+
+    // Operations for looking at a single station or conveyor of a large facility
+    String describeStation(int stationID);
+
+    String describeConveyor(int conveyorID);
+}
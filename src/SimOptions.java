@@ -0,0 +1,72 @@
+package src;
+import java.util.*;
+
+// Class for the command line options of a simulation run, given as --key=value pairs
+public class SimOptions {
+    private final Map<String, String> options = new LinkedHashMap<>(); // kept in command line order
+
+    // Constructor method - parse the command line arguments ("--flag" alone means "--flag=true")
+    public SimOptions(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unrecognized argument: " + arg);
+            }
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, split), arg.substring(split + 1));
+            }
+        }
+    }
+
+    // Constructor method - copy another set of options
+    private SimOptions(SimOptions other) {
+        options.putAll(other.options);
+    }
+
+    // Method to get a copy of these options with one option set to a different value
+    public SimOptions with(String key, String value) {
+        SimOptions copy = new SimOptions(this);
+        copy.options.put(key, value);
+        return copy;
+    }
+
+    // Method to get the names of the given options, in command line order
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(options.keySet());
+    }
+
+    // Method to check whether an option was given
+    public boolean has(String key) {
+        return options.containsKey(key);
+    }
+
+    // Method to get an option as text, or the default if it was not given
+    public String get(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    // Method to get an option as an int, or the default if it was not given
+    public int getInt(String key, int defaultValue) {
+        long value = getLong(key, defaultValue);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Option --" + key + " expects a number from " + Integer.MIN_VALUE + " to " + Integer.MAX_VALUE
+            + " but got " + value);
+        }
+        return (int) value;
+    }
+
+    // Method to get an option as a long, or the default if it was not given
+    public long getLong(String key, long defaultValue) {
+        String value = options.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + key + " expects a number but got \"" + value + "\"");
+        }
+    }
+}
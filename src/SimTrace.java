@@ -0,0 +1,398 @@
+package src;
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+// Class for a binary trace of a threaded run, written to and read from a memory-mapped file. Recording appends
+// one 8-byte event for every conveyor lock and unlock and every work and sleep time drawn, in the order they
+// happened across all station threads. Replaying makes every station wait for its next recorded event before it
+// touches a conveyor or draws a time, so the run goes through exactly the recorded interleaving again - a rare
+// livelock that was caught once can be run as often as needed, and re-benchmarked.
+// A lock is logged after it is taken and an unlock before the conveyor is let go, so in the trace every unlock
+// comes before the next station's lock of that conveyor and a replayed lock never has to wait. Failed tryLocks are
+// not logged: in replay a tryLock fails whenever the station's next event is not taking that conveyor.
+//
+// File layout (little endian): a 208-byte header - magic, version, seed, stations, conveyors, the maximum work
+// and sleep times, event count, package group size, conveyor capacity, strategy and back-off names and the service
+// times - followed by the events: type << 56 | value << 32 | station, where the value is the conveyor ID for lock
+// events and the milliseconds for work and sleep events. The header keeps every option that changes which events
+// happen, so a replay only needs the same facility; the service times are only kept to be reported, as a replay
+// takes its work times from the events. Values are 24 bits, so a run is only recorded when every time it can draw
+// fits.
+public class SimTrace {
+    public static final int LOCK = 1; // taken with a tryLock
+    public static final int LOCK_WAITED = 2; // taken with a blocking lock
+    public static final int UNLOCK = 3;
+    public static final int WORK = 4;
+    public static final int SLEEP = 5;
+
+    private static final int MAGIC = 0x50525354; // "PRST"
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 208;
+    private static final int NAME_BYTES = 16;
+    private static final int SERVICE_BYTES = 128; // the service times as described in the run header, cut short if longer
+    private static final int MAX_VALUE = 0xFFFFFF; // conveyor IDs and times are stored in 24 bits
+    private static final int SEGMENT_SHIFT = 26; // the file is mapped in 64 MB segments
+    private static final int MAX_SEGMENTS = 4096;
+
+    private final FileChannel channel;
+    private final boolean replaying;
+    private final AtomicReferenceArray<MappedByteBuffer> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    private final long seed;
+    private final int numStations;
+    private final int numConveyors;
+    private final int maxWorkMillis;
+    private final int maxSleepMillis;
+    private final int packages;
+    private final int conveyorCapacity;
+    private final String strategy;
+    private final String backoff;
+    private final String serviceTimes;
+
+    // Recording state
+    private final AtomicLong nextEvent = new AtomicLong();
+
+    // Replay state
+    private final long numEvents;
+    private volatile long cursor = 0;
+    private final AtomicReferenceArray<Thread> waiting; // the thread of each station, once it has waited for its turn
+    private volatile String divergence; // set when the run stops following the trace
+
+    private SimTrace(FileChannel channel, boolean replaying, long seed, int numStations, int numConveyors, int maxWorkMillis, int maxSleepMillis,
+    int packages, int conveyorCapacity, String strategy, String backoff, String serviceTimes, long numEvents) {
+        this.channel = channel;
+        this.replaying = replaying;
+        this.seed = seed;
+        this.numStations = numStations;
+        this.numConveyors = numConveyors;
+        this.maxWorkMillis = maxWorkMillis;
+        this.maxSleepMillis = maxSleepMillis;
+        this.packages = packages;
+        this.conveyorCapacity = conveyorCapacity;
+        this.strategy = strategy;
+        this.backoff = backoff;
+        this.serviceTimes = serviceTimes;
+        this.numEvents = numEvents;
+        this.waiting = new AtomicReferenceArray<>(replaying ? numStations : 0);
+    }
+
+    // Method to start recording a run of the given facility to a new trace file - the options must hold the seed
+    public static SimTrace record(String path, FacilityTopology topology, SimOptions options) throws IOException {
+        int maxWorkMillis = options.getInt("max-work-ms", 1000);
+        int maxSleepMillis = options.getInt("max-sleep-ms", 500);
+        String strategy = options.get("strategy", "trylock");
+        String backoff = options.get("backoff", "random");
+        if (topology.numConveyors() > MAX_VALUE || maxSleepMillis > MAX_VALUE) {
+            throw new IllegalArgumentException("This run cannot be traced - conveyor IDs and times must fit in 24 bits, up to " + MAX_VALUE);
+        }
+        ServiceTimes services = ServiceTimes.create(topology, options);
+        if (services.maxMillis() > MAX_VALUE) {
+            throw new IllegalArgumentException("This run cannot be traced - the service times (" + services.describe() + ") can take up to "
+            + services.maxMillis() + " ms, and a trace holds times up to " + MAX_VALUE + " ms");
+        }
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int packages = options.getInt("packages", 0);
+        return new SimTrace(channel, false, options.getLong("seed", 0), topology.numStations(), topology.numConveyors(), maxWorkMillis,
+        maxSleepMillis, packages, options.getInt("conveyor-capacity", 4 * packages), strategy, backoff, services.describe(), 0);
+    }
+
+    // Method to open a trace file for replay
+    public static SimTrace replay(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        if (channel.size() < HEADER_BYTES) {
+            channel.close();
+            throw new IllegalArgumentException(path + " is not a simulation trace - it is too short");
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IllegalArgumentException(path + " is not a version " + VERSION + " simulation trace");
+        }
+        long numEvents = header.getLong(32);
+        if (channel.size() < HEADER_BYTES + numEvents * 8) {
+            channel.close();
+            throw new IllegalArgumentException(path + " is cut short - the header promises " + numEvents + " events");
+        }
+        return new SimTrace(channel, true, header.getLong(8), header.getInt(16), header.getInt(20), header.getInt(24), header.getInt(28),
+        header.getInt(40), header.getInt(44), text(header, 48, NAME_BYTES), text(header, 64, NAME_BYTES), text(header, 80, SERVICE_BYTES),
+        numEvents);
+    }
+
+    private static String text(MappedByteBuffer header, int offset, int length) {
+        byte[] text = new byte[length];
+        header.position(offset);
+        header.get(text);
+        return new String(text, StandardCharsets.UTF_8).trim();
+    }
+
+    public boolean isReplaying() {
+        return replaying;
+    }
+
+    // The service times of the recorded run, as described in its header
+    public String serviceTimes() {
+        return serviceTimes;
+    }
+
+    // Method to get the options of the recorded run, for the replay - the facility options are left as given
+    public SimOptions replayOptions(SimOptions options) {
+        if (options.has("strategy") && !options.get("strategy", "").equals(strategy)) {
+            throw new IllegalArgumentException("The trace was recorded with the " + strategy + " strategy, not " + options.get("strategy", ""));
+        }
+        if (options.has("backoff") && !options.get("backoff", "").equals(backoff)) {
+            throw new IllegalArgumentException("The trace was recorded with the " + backoff + " back-off, not " + options.get("backoff", ""));
+        }
+        SimOptions replay = options.with("seed", Long.toString(seed)).with("strategy", strategy).with("backoff", backoff)
+        .with("max-work-ms", Integer.toString(maxWorkMillis)).with("max-sleep-ms", Integer.toString(maxSleepMillis));
+        return packages > 0 ? replay.with("packages", Integer.toString(packages)).with("conveyor-capacity", Integer.toString(conveyorCapacity))
+        : replay.with("packages", "0");
+    }
+
+    public long numEvents() {
+        return replaying ? numEvents : nextEvent.get();
+    }
+
+    // Method to check that a replay is run on the facility it was recorded on
+    public void checkFacility(FacilityTopology topology) {
+        if (topology.numStations() != numStations || topology.numConveyors() != numConveyors) {
+            throw new IllegalArgumentException("The trace was recorded on " + numStations + " stations and " + numConveyors
+            + " conveyors, not " + topology.numStations() + " and " + topology.numConveyors());
+        }
+    }
+
+    // Method to get the mapped segment holding a file offset, mapping it the first time it is needed
+    private MappedByteBuffer segment(long offset) {
+        int index = (int) (offset >>> SEGMENT_SHIFT);
+        MappedByteBuffer segment = segments.get(index);
+        if (segment == null) {
+            synchronized (this) {
+                segment = segments.get(index);
+                if (segment == null) {
+                    try {
+                        long start = (long) index << SEGMENT_SHIFT;
+                        long size = replaying ? Math.min(1L << SEGMENT_SHIFT, channel.size() - start) : 1L << SEGMENT_SHIFT;
+                        segment = channel.map(replaying ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, start, size);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    segment.order(ByteOrder.LITTLE_ENDIAN);
+                    segments.set(index, segment);
+                }
+            }
+        }
+        return segment;
+    }
+
+    private void append(int type, int value, int stationID) {
+        if (value < 0 || value > MAX_VALUE) {
+            throw new IllegalStateException("Cannot record " + value + " for station S" + stationID + " - trace values are 24 bits");
+        }
+        long offset = HEADER_BYTES + nextEvent.getAndIncrement() * 8;
+        segment(offset).putLong((int) (offset & ((1 << SEGMENT_SHIFT) - 1)), ((long) type << 56) | ((long) (value & 0xFFFFFF) << 32) | stationID);
+    }
+
+    private long event(long index) {
+        long offset = HEADER_BYTES + index * 8;
+        return segment(offset).getLong((int) (offset & ((1 << SEGMENT_SHIFT) - 1)));
+    }
+
+    // Method for a station to wait until the next event of the replay is one of its own, and return it
+    private long awaitTurn(int stationID) {
+        while (true) {
+            if (divergence != null) {
+                throw new IllegalStateException(divergence);
+            }
+            long index = cursor;
+            if (index >= numEvents) {
+                diverge("station S" + stationID + " went on after the end of the trace");
+            } else {
+                long event = event(index);
+                if ((int) event == stationID) {
+                    return event;
+                }
+                waiting.set(stationID, Thread.currentThread());
+                if (cursor == index) {
+                    LockSupport.park(this);
+                }
+            }
+        }
+    }
+
+    // Method to move the replay on to the next event and wake the station it belongs to
+    private void advance() {
+        long index = cursor + 1;
+        cursor = index;
+        if (index < numEvents) {
+            Thread next = waiting.get((int) event(index));
+            if (next != null) {
+                LockSupport.unpark(next);
+            }
+        }
+    }
+
+    private void diverge(String message) {
+        divergence = "Replay diverged from the trace at event " + cursor + ": " + message;
+        for (int s = 0; s < waiting.length(); s++) {
+            Thread thread = waiting.get(s);
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+        throw new IllegalStateException(divergence);
+    }
+
+    private static int typeOf(long event) {
+        return (int) (event >>> 56);
+    }
+
+    private static int valueOf(long event) {
+        return (int) (event >>> 32) & 0xFFFFFF;
+    }
+
+    // Method for a station about to ask the strategy for its conveyors - in replay it waits until its next event is
+    // due, as the token and arbiter strategies pick who goes next outside the conveyor locks and would otherwise
+    // hand a conveyor to a station whose turn has not come
+    public void awaitAcquireTurn(int stationID) {
+        if (replaying) {
+            awaitTurn(stationID);
+        }
+    }
+
+    // Method for a traced tryLock - in replay it only succeeds when taking this conveyor is the station's next event
+    public boolean tryLock(ConveyorObj conveyor, int stationID) {
+        if (!replaying) {
+            boolean locked = conveyor.lockConveyor(stationID);
+            if (locked) {
+                append(LOCK, conveyor.getID(), stationID);
+            }
+            return locked;
+        }
+        long event = awaitTurn(stationID);
+        if (typeOf(event) != LOCK || valueOf(event) != conveyor.getID()) {
+            return false;
+        }
+        if (!conveyor.lockConveyor(stationID)) {
+            diverge("station S" + stationID + " found conveyor C" + conveyor.getID() + " taken by S" + conveyor.getLockedBy());
+        }
+        advance();
+        return true;
+    }
+
+    // Method for a traced blocking lock
+    public void lock(ConveyorObj conveyor, int stationID) {
+        if (!replaying) {
+            conveyor.lockConveyorBlocking(stationID);
+            append(LOCK_WAITED, conveyor.getID(), stationID);
+            return;
+        }
+        long event = awaitTurn(stationID);
+        if ((typeOf(event) != LOCK && typeOf(event) != LOCK_WAITED) || valueOf(event) != conveyor.getID()) {
+            diverge("station S" + stationID + " waited for conveyor C" + conveyor.getID() + " instead of " + describe(event));
+        }
+        if (!conveyor.lockConveyor(stationID)) {
+            diverge("station S" + stationID + " found conveyor C" + conveyor.getID() + " taken by S" + conveyor.getLockedBy());
+        }
+        advance();
+    }
+
+    // Method for a traced unlock - the event is logged before the conveyor is let go
+    public void unlock(ConveyorObj conveyor) {
+        int stationID = conveyor.getLockedBy();
+        if (!replaying) {
+            append(UNLOCK, conveyor.getID(), stationID);
+            conveyor.unlockConveyor();
+            return;
+        }
+        long event = awaitTurn(stationID);
+        if (typeOf(event) != UNLOCK || valueOf(event) != conveyor.getID()) {
+            diverge("station S" + stationID + " released conveyor C" + conveyor.getID() + " instead of " + describe(event));
+        }
+        conveyor.unlockConveyor();
+        advance();
+    }
+
+    // Method for a station's work or sleep time - recorded as drawn, or taken from the trace in replay
+    public int time(int type, int stationID, int drawnMillis) {
+        if (!replaying) {
+            append(type, drawnMillis, stationID);
+            return drawnMillis;
+        }
+        long event = awaitTurn(stationID);
+        if (typeOf(event) != type) {
+            diverge("station S" + stationID + " went to " + (type == WORK ? "work" : "sleep") + " instead of " + describe(event));
+        }
+        advance();
+        return valueOf(event);
+    }
+
+    // Method to describe one event for the divergence message and the trace dump
+    static String describe(long event) {
+        int stationID = (int) event;
+        switch (typeOf(event)) {
+            case LOCK:
+                return "S" + stationID + " locks C" + valueOf(event);
+            case LOCK_WAITED:
+                return "S" + stationID + " waits for and locks C" + valueOf(event);
+            case UNLOCK:
+                return "S" + stationID + " releases C" + valueOf(event);
+            case WORK:
+                return "S" + stationID + " works " + valueOf(event) + " ms";
+            case SLEEP:
+                return "S" + stationID + " sleeps " + valueOf(event) + " ms";
+            default:
+                return "unknown event " + Long.toHexString(event);
+        }
+    }
+
+    // Method to check after a replay that the whole trace was gone through
+    public void checkFinished() {
+        if (divergence != null) {
+            throw new IllegalStateException(divergence);
+        }
+        if (cursor != numEvents) {
+            throw new IllegalStateException("Replay stopped at event " + cursor + " of " + numEvents + ": next was " + describe(event(cursor)));
+        }
+    }
+
+    private static void putText(MappedByteBuffer header, int offset, int length, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > length) {
+            bytes = (new String(bytes, 0, length - 3, StandardCharsets.UTF_8).replace("\uFFFD", "") + "...").getBytes(StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < length; i++) {
+            header.put(offset + i, i < bytes.length ? bytes[i] : (byte) ' ');
+        }
+    }
+
+    // Method to finish the file - a recording gets its header and is cut to the events written
+    public void close() throws IOException {
+        if (!replaying) {
+            MappedByteBuffer header = segment(0);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(8, seed);
+            header.putInt(16, numStations);
+            header.putInt(20, numConveyors);
+            header.putInt(24, maxWorkMillis);
+            header.putInt(28, maxSleepMillis);
+            header.putLong(32, nextEvent.get());
+            header.putInt(40, packages);
+            header.putInt(44, conveyorCapacity);
+            putText(header, 48, NAME_BYTES, strategy);
+            putText(header, 64, NAME_BYTES, backoff);
+            putText(header, 80, SERVICE_BYTES, serviceTimes);
+            for (int i = 0; i < MAX_SEGMENTS && segments.get(i) != null; i++) {
+                segments.get(i).force();
+            }
+            channel.truncate(HEADER_BYTES + nextEvent.get() * 8);
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,212 @@
+package src;
+import java.util.Locale;
+
+// Class for the completion statistics of a simulation run, shared by the threaded and virtual clock modes. The
+// figures of a station sit side by side in one array, in a slot written only by that station. In the threaded modes
+// slots are padded so that no two stations' figures come within a cache line of each other, since neighbouring
+// stations run on different threads; the single-threaded modes keep the slots packed.
+public class SimulationStats {
+    private static final int COMPLETED_GROUPS = 0;
+    private static final int RETRIES = 1;
+    private static final int FINISH_TIME = 2;
+    private static final int MAX_WAIT_NANOS = 3;
+    private static final int IDLE_NANOS = 4; // time spent backing off
+    private static final int HOLD_NANOS = 5; // time spent holding all of the station's conveyors
+    private static final int FIGURES = 6;
+    private static final int PADDED_SLOT = 16; // 128 bytes - 80 bytes between the figures of neighbouring slots, wherever the array starts
+
+    private volatile int numStations; // grows when stations are spliced into a running facility
+    private final int capacity;
+    private final int slotSize;
+    private final long[] slots;
+    private int concurrencyBound = 0; // most stations that can hold their conveyors at once, 0 if not known
+    private final long startNanos = System.nanoTime();
+    private long elapsedTime;
+
+    // Constructor method - one packed slot per routing station
+    public SimulationStats(int numStations) {
+        this(numStations, 0, FIGURES);
+    }
+
+    private SimulationStats(int numStations, int spare, int slotSize) {
+        this.numStations = numStations;
+        this.capacity = numStations + spare;
+        this.slotSize = slotSize;
+        this.slots = new long[Math.multiplyExact(capacity, slotSize)];
+    }
+
+    // Method to create the stats of a run with a thread per station - padded slots, with spare ones kept free for
+    // stations added while the facility runs
+    public static SimulationStats forThreads(int numStations, int spare) {
+        return new SimulationStats(numStations, spare, PADDED_SLOT);
+    }
+
+    // Method to take the next free slot for a station added while the facility runs - returns its station ID
+    public synchronized int addStation() {
+        if (numStations == capacity) {
+            throw new IllegalStateException("No room for more stations - the facility is full at " + capacity);
+        }
+        return numStations++;
+    }
+
+    public int numStations() {
+        return numStations;
+    }
+
+    // Method to get the milliseconds of wall-clock time since the stats were created
+    public long wallMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    // Method for a station to record a completed package group
+    public void recordGroup(int stationID) {
+        slots[stationID * slotSize + COMPLETED_GROUPS]++;
+    }
+
+    // Method for a station to record a failed or blocked attempt at its conveyors
+    public void recordRetry(int stationID) {
+        slots[stationID * slotSize + RETRIES]++;
+    }
+
+    // Method for a station to record how long it waited to get both of its conveyors
+    public void recordWait(int stationID, long nanos) {
+        int i = stationID * slotSize + MAX_WAIT_NANOS;
+        if (nanos > slots[i]) {
+            slots[i] = nanos;
+        }
+    }
+
+    // Method for a station to record time spent backing off before trying again
+    public void recordIdle(int stationID, long nanos) {
+        slots[stationID * slotSize + IDLE_NANOS] += nanos;
+    }
+
+    // Method for a station to record how long it held its conveyors for a package group
+    public void recordHold(int stationID, long nanos) {
+        slots[stationID * slotSize + HOLD_NANOS] += nanos;
+    }
+
+    // Method to give the facility's bound on stations working at once, so the summary can compare against it
+    public void setConcurrencyBound(int bound) {
+        concurrencyBound = bound;
+    }
+
+    // Method for a station to record the time at which it went offline
+    public void recordFinish(int stationID, long time) {
+        slots[stationID * slotSize + FINISH_TIME] = time;
+    }
+
+    // Method to fill in a station's figures reported by the worker process that ran it in a sharded run
+    public void setStation(int stationID, long groups, long retryCount, long finish, long maxWait, long idle, long hold) {
+        int base = stationID * slotSize;
+        slots[base + COMPLETED_GROUPS] = groups;
+        slots[base + RETRIES] = retryCount;
+        slots[base + FINISH_TIME] = finish;
+        slots[base + MAX_WAIT_NANOS] = maxWait;
+        slots[base + IDLE_NANOS] = idle;
+        slots[base + HOLD_NANOS] = hold;
+    }
+
+    // Method to record the total simulated time of the run
+    public void setElapsedTime(long time) {
+        elapsedTime = time;
+    }
+
+    public long getCompletedGroups(int stationID) {
+        return slots[stationID * slotSize + COMPLETED_GROUPS];
+    }
+
+    public long getRetries(int stationID) {
+        return slots[stationID * slotSize + RETRIES];
+    }
+
+    public long getFinishTime(int stationID) {
+        return slots[stationID * slotSize + FINISH_TIME];
+    }
+
+    public long getMaxWaitNanos(int stationID) {
+        return slots[stationID * slotSize + MAX_WAIT_NANOS];
+    }
+
+    public long getIdleNanos(int stationID) {
+        return slots[stationID * slotSize + IDLE_NANOS];
+    }
+
+    public long getHoldNanos(int stationID) {
+        return slots[stationID * slotSize + HOLD_NANOS];
+    }
+
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    // Method to add up one figure over all stations
+    private long sum(int figure) {
+        long total = 0;
+        for (int i = figure; i < slots.length; i += slotSize) {
+            total += slots[i];
+        }
+        return total;
+    }
+
+    // Method to get the sum of completed package groups over all stations
+    public long totalGroups() {
+        return sum(COMPLETED_GROUPS);
+    }
+
+    // Method to get the sum of failed output conveyor attempts over all stations
+    public long totalRetries() {
+        return sum(RETRIES);
+    }
+
+    // Method to get the time all stations together spent backing off
+    public long totalIdleNanos() {
+        return sum(IDLE_NANOS);
+    }
+
+    // Method to get the average number of stations holding their conveyors over the run
+    public double averageWorking() {
+        long total = sum(HOLD_NANOS);
+        return elapsedTime > 0 ? total / (elapsedTime * 1e6) : 0;
+    }
+
+    public int getConcurrencyBound() {
+        return concurrencyBound;
+    }
+
+    // Method to get the longest wait for both conveyors over all stations
+    public long maxWaitNanos() {
+        long max = 0;
+        for (int i = MAX_WAIT_NANOS; i < slots.length; i += slotSize) {
+            max = Math.max(max, slots[i]);
+        }
+        return max;
+    }
+
+    // Method to print the completion summary - per station details are only printed for small facilities
+    public void print(String timeLabel) {
+        System.out.println("\nCompletion Statistics (" + timeLabel + "):");
+        int count = numStations;
+        if (count <= 32) {
+            for (int i = 0; i < count; i++) {
+                System.out.println("\tStation S" + i + ": " + getCompletedGroups(i) + " package group(s), " + getRetries(i) +
+                " retry(ies), max wait " + getMaxWaitNanos(i) / 1_000_000 + " ms, offline at " + getFinishTime(i) + " ms");
+            }
+        }
+        long groups = totalGroups();
+        System.out.println("\tTotal package groups: " + groups);
+        System.out.println("\tTotal retries: " + totalRetries());
+        System.out.println("\tMax wait for both conveyors: " + maxWaitNanos() / 1_000_000 + " ms");
+        System.out.println("\tIdle time backing off: " + totalIdleNanos() / 1_000_000 + " ms over all stations");
+        System.out.println("\tElapsed time: " + elapsedTime + " ms");
+        if (elapsedTime > 0) {
+            System.out.printf(Locale.ROOT, "\tThroughput: %.2f package groups/s%n", groups * 1000.0 / elapsedTime);
+            if (concurrencyBound > 0) {
+                // Throughput can only grow with the number of stations working, so this is also the share of the
+                // throughput the facility could reach with the same work times
+                System.out.printf(Locale.ROOT, "\tStations working at once: %.2f on average, at most %d (%.1f%% of the bound)%n", averageWorking(),
+                concurrencyBound, averageWorking() * 100 / concurrencyBound);
+            }
+        }
+    }
+}
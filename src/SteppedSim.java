@@ -0,0 +1,335 @@
+package src;
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Class for the data-oriented version of the virtual clock simulation (--mode=stepped). The station and conveyor
+// state is a handful of parallel primitive arrays - workload, state, wait start and due time per station, owner
+// and claim word per conveyor - with no object per station or conveyor, so a million stations are a few dozen MB
+// of contiguous ints and longs and a step is a few array reads. A SteppedSim runs once.
+// Time moves in rounds, one per virtual millisecond that has events. The stations are split into contiguous stripes,
+// one per worker thread, aligned to 16 stations so neighbouring stripes share at most one cache line of any array.
+// A station always has exactly one event coming, so the events are just its time in a per-station array, and each
+// worker finds the due stations of its stripe through a timing wheel of per-millisecond buckets linked through
+// another per-station array - a push or pop is a couple of array writes, where a heap would be a cache miss per
+// level. Every round runs in three phases with a barrier after each:
+//   1. stations whose work is done release their conveyors and, with work left, get ready to try again
+//   2. ready stations finding all of their conveyors free claim them - a claim word keeps the lowest station ID
+//      that asked this round, so the outcome does not depend on which worker got there first
+//   3. a station that won every claim takes the conveyors and works; one that lost any claims again in a second
+//      pass against the conveyors still free, and backs off if it loses again
+// A station that finds its first conveyor taken waits until its holder is done, as in VirtualClockSim. Everything
+// a worker decides is settled by the barriers, so a run is the same every time for a given --seed and --parallelism.
+public class SteppedSim {
+    private static final int WORKING = 1; // otherwise the station's next event is an attempt at its conveyors
+    private static final int FREE = -1;
+    private static final int ALIGN = 16; // stations per stripe boundary - 64 bytes of ints
+    private static final int PAD = 16; // longs per worker slot of the shared next-event array
+    private static final int CLAIM_PASSES = 2; // claim and settle passes per round
+    private static final int WHEEL = 1 << 12; // buckets per worker - one per millisecond, later events go round again
+    private static final VarHandle CLAIM = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final FacilityTopology topology;
+    private final int numStations;
+    private final int[] workload;
+    private final byte[] state;
+    private final long[] waitStart;
+    private final long[] at; // time of the station's next event - when a working station will be done
+    private final int[] link; // next station in the same timing wheel bucket
+    private final int[] owner; // per conveyor, the working station holding it, or FREE
+    private final long[] claim; // per conveyor, round << 32 | lowest station ID that claimed it that round
+    private final SimulationStats stats;
+    private final int maxSleepMillis;
+    private ServiceTimes services;
+    private long seed = new SplittableRandom().nextLong();
+    private long steps = 0;
+
+    // Constructor method - allocates all of the station and conveyor arrays
+    public SteppedSim(FacilityTopology topology, int maxWorkMillis, int maxSleepMillis) {
+        this.topology = topology;
+        this.numStations = topology.numStations();
+        this.maxSleepMillis = maxSleepMillis;
+        this.services = ServiceTimes.uniform(ServiceTime.uniform(maxWorkMillis));
+        this.workload = new int[numStations];
+        for (int i = 0; i < numStations; i++) {
+            workload[i] = topology.workload(i);
+        }
+        this.state = new byte[numStations];
+        this.waitStart = new long[numStations];
+        this.at = new long[numStations];
+        this.link = new int[numStations];
+        this.owner = new int[topology.numConveyors()];
+        Arrays.fill(owner, FREE);
+        this.claim = new long[topology.numConveyors()];
+        this.stats = new SimulationStats(numStations);
+        stats.setConcurrencyBound(topology.concurrencyBound());
+    }
+
+    // Method to make the run repeatable for a given number of workers
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    // Method to give the stations other service times than the uniform one below maxWorkMillis
+    public void setServiceTimes(ServiceTimes services) {
+        this.services = services;
+    }
+
+    // Number of station events processed by the last run - finished work and attempts at the conveyors
+    public long getSteps() {
+        return steps;
+    }
+
+    // Method to run every station until its workload is done on the given number of worker threads
+    public SimulationStats run(int parallelism) throws InterruptedException {
+        int numWorkers = Math.max(1, Math.min(parallelism, (numStations + ALIGN - 1) / ALIGN));
+        long[] next = new long[numWorkers * PAD]; // per worker, padded - the time of its earliest event
+        CyclicBarrier barrier = numWorkers > 1 ? new CyclicBarrier(numWorkers) : null;
+        SplittableRandom seeds = new SplittableRandom(seed);
+        Worker[] workers = new Worker[numWorkers];
+        for (int w = 0; w < numWorkers; w++) {
+            int first = stripeStart(w, numWorkers);
+            workers[w] = new Worker(w, first, stripeStart(w + 1, numWorkers), next, barrier, seeds.split());
+        }
+
+        Thread[] threads = new Thread[numWorkers - 1];
+        for (int w = 1; w < numWorkers; w++) {
+            threads[w - 1] = new Thread(workers[w], "stepped-worker-" + w);
+            threads[w - 1].start();
+        }
+        workers[0].run();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        steps = 0;
+        Throwable failure = null;
+        for (Worker worker : workers) {
+            steps += worker.steps;
+            if (worker.failure != null && (failure == null || failure instanceof BrokenBarrierException)) {
+                failure = worker.failure; // the cause rather than a worker stopped by the broken barrier
+            }
+        }
+        if (failure != null) {
+            throw new IllegalStateException("A stepped worker failed", failure);
+        }
+        stats.setElapsedTime(workers[0].now);
+        return stats;
+    }
+
+    // Method to get the first station of a worker's stripe - stripes are as even as the 16-station alignment allows
+    private int stripeStart(int worker, int numWorkers) {
+        if (worker == numWorkers) {
+            return numStations;
+        }
+        long blocks = (numStations + ALIGN - 1) / ALIGN;
+        return (int) Math.min(numStations, blocks * worker / numWorkers * ALIGN);
+    }
+
+    // Class for one worker thread and the events of its stripe of stations
+    private final class Worker implements Runnable {
+        private final int id;
+        private final long[] next;
+        private final CyclicBarrier barrier;
+        private final SplittableRandom random;
+        private final int[] bucket = new int[WHEEL]; // first station of each bucket, or FREE
+        private int pending = 0;
+        private final int[] ready; // stations trying their conveyors this round
+        private final int[] claimants; // the ones that found them all free
+        private long now = 0;
+        private long steps = 0;
+        private Throwable failure;
+
+        Worker(int id, int first, int end, long[] next, CyclicBarrier barrier, SplittableRandom random) {
+            this.id = id;
+            this.next = next;
+            this.barrier = barrier;
+            this.random = random;
+            this.ready = new int[end - first];
+            this.claimants = new int[end - first];
+            Arrays.fill(bucket, FREE);
+            for (int s = first; s < end; s++) {
+                if (workload[s] > 0) {
+                    schedule(0, s);
+                }
+            }
+            next[id * PAD] = pending == 0 ? Long.MAX_VALUE : 0;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int round = 0;
+                while (true) {
+                    long time = Long.MAX_VALUE;
+                    for (int i = 0; i < next.length; i += PAD) {
+                        time = Math.min(time, next[i]);
+                    }
+                    if (time == Long.MAX_VALUE) {
+                        return;
+                    }
+                    now = time;
+                    int numReady = finishWork();
+                    await();
+                    for (int pass = 1; pass <= CLAIM_PASSES; pass++) {
+                        round++;
+                        int numClaimants = claim(numReady, round);
+                        await();
+                        numReady = settle(numClaimants, round, pass == CLAIM_PASSES);
+                        if (pass == CLAIM_PASSES) {
+                            next[id * PAD] = nextTime();
+                        }
+                        await();
+                    }
+                }
+            } catch (Throwable e) {
+                failure = e;
+                if (barrier != null) {
+                    barrier.reset(); // the other workers stop at their next barrier
+                }
+            }
+        }
+
+        private void await() throws InterruptedException, BrokenBarrierException {
+            if (barrier != null) {
+                barrier.await();
+            }
+        }
+
+        private void schedule(long time, int s) {
+            int b = (int) time & (WHEEL - 1);
+            at[s] = time;
+            link[s] = bucket[b];
+            bucket[b] = s;
+            pending++;
+        }
+
+        // Method to find the time of the earliest event - the first bucket from now holding an event for that very
+        // millisecond, or failing that within a whole turn of the wheel, the earliest of the later turns
+        private long nextTime() {
+            if (pending == 0) {
+                return Long.MAX_VALUE;
+            }
+            long earliest = Long.MAX_VALUE;
+            for (long t = now; t < now + WHEEL; t++) {
+                for (int s = bucket[(int) t & (WHEEL - 1)]; s != FREE; s = link[s]) {
+                    if (at[s] == t) {
+                        return t;
+                    }
+                    earliest = Math.min(earliest, at[s]);
+                }
+            }
+            return earliest;
+        }
+
+        // Phase 1 - take this round's events: finish work and collect the stations ready to try their conveyors
+        private int finishWork() {
+            int numReady = 0;
+            int b = (int) now & (WHEEL - 1);
+            int s = bucket[b];
+            bucket[b] = FREE;
+            while (s != FREE) {
+                int following = link[s];
+                if (at[s] != now) {
+                    link[s] = bucket[b]; // due on a later turn of the wheel
+                    bucket[b] = s;
+                    s = following;
+                    continue;
+                }
+                pending--;
+                steps++;
+                if (state[s] != WORKING) {
+                    ready[numReady++] = s;
+                    s = following;
+                    continue;
+                }
+                state[s] = 0;
+                workload[s]--;
+                stats.recordGroup(s);
+                for (int k = 0; k < topology.conveyorCount(s); k++) {
+                    int c = topology.conveyor(s, k);
+                    if (owner[c] == s) {
+                        owner[c] = FREE;
+                    }
+                }
+                if (workload[s] > 0) {
+                    waitStart[s] = now;
+                    ready[numReady++] = s;
+                } else {
+                    stats.recordFinish(s, now);
+                }
+                s = following;
+            }
+            return numReady;
+        }
+
+        // Phase 2 - wait for a taken first conveyor, back off from any other taken one, claim when all are free
+        private int claim(int numReady, int round) {
+            int numClaimants = 0;
+            for (int r = 0; r < numReady; r++) {
+                int s = ready[r];
+                int holder = owner[topology.conveyor(s, 0)];
+                if (holder != FREE) {
+                    schedule(at[holder], s); // tried again once the holder is done
+                    continue;
+                }
+                boolean allFree = true;
+                for (int k = 1; k < topology.conveyorCount(s) && allFree; k++) {
+                    allFree = owner[topology.conveyor(s, k)] == FREE;
+                }
+                if (!allFree) {
+                    backOff(s);
+                    continue;
+                }
+                long mine = ((long) round << 32) | s;
+                for (int k = 0; k < topology.conveyorCount(s); k++) {
+                    int c = topology.conveyor(s, k);
+                    long seen = (long) CLAIM.getVolatile(claim, c);
+                    while (((int) (seen >>> 32) != round || (int) seen > s) && !CLAIM.compareAndSet(claim, c, seen, mine)) {
+                        seen = (long) CLAIM.getVolatile(claim, c);
+                    }
+                }
+                claimants[numClaimants++] = s;
+            }
+            return numClaimants;
+        }
+
+        // Phase 3 - stations that won all of their claims take the conveyors and start work, the rest try again in
+        // the next pass or, after the last one, back off. Returns the number of stations left in ready.
+        private int settle(int numClaimants, int round, boolean last) {
+            int numLeft = 0;
+            for (int r = 0; r < numClaimants; r++) {
+                int s = claimants[r];
+                long mine = ((long) round << 32) | s;
+                boolean won = true;
+                for (int k = 0; k < topology.conveyorCount(s) && won; k++) {
+                    won = claim[topology.conveyor(s, k)] == mine;
+                }
+                if (!won) {
+                    if (last) {
+                        backOff(s);
+                    } else {
+                        ready[numLeft++] = s;
+                    }
+                    continue;
+                }
+                for (int k = 0; k < topology.conveyorCount(s); k++) {
+                    owner[topology.conveyor(s, k)] = s;
+                }
+                stats.recordWait(s, (now - waitStart[s]) * 1_000_000);
+                int workMillis = services.of(s).sample(random);
+                stats.recordHold(s, workMillis * 1_000_000L);
+                state[s] = WORKING;
+                schedule(now + workMillis, s);
+            }
+            return numLeft;
+        }
+
+        private void backOff(int s) {
+            stats.recordRetry(s);
+            int sleepMillis = maxSleepMillis > 0 ? random.nextInt(maxSleepMillis) : 0;
+            stats.recordIdle(s, sleepMillis * 1_000_000L);
+            schedule(now + sleepMillis, s);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package src;
+import java.util.concurrent.locks.*;
+
+// Strategy for a Chandy-Misra style token handoff. Each conveyor has a token that always belongs to one of the two
+// stations sharing it, and the token is either clean or dirty. A station may only work while it owns the tokens of
+// all of its conveyors. Tokens become dirty when used; a dirty token that is not in use may be taken by the
+// neighbour, while a clean one is kept until its owner has worked. On release a requested token is handed to the
+// neighbour clean. Tokens start out dirty with the lower numbered station, which keeps the precedence between
+// neighbours acyclic, so the facility cannot deadlock and no station starves. The handoff needs every conveyor to be
+// shared by at most two stations, which holds for the ring and for any topology without shared merge/split conveyors.
+public class TokenHandoffStrategy implements ConveyorAcquisitionStrategy {
+    private final FacilityTopology topology;
+    private final int[] holder;
+    private final boolean[] dirty;
+    private final boolean[] requested;
+    private final boolean[] inUse;
+    private final ReentrantLock[] tokenLock;
+    private final Condition[] tokenChanged;
+
+    // Constructor method - the topology says which two stations share each conveyor
+    public TokenHandoffStrategy(FacilityTopology topology) {
+        int numConveyors = topology.numConveyors();
+        this.topology = topology;
+        this.holder = new int[numConveyors];
+        this.dirty = new boolean[numConveyors];
+        this.requested = new boolean[numConveyors];
+        this.inUse = new boolean[numConveyors];
+        this.tokenLock = new ReentrantLock[numConveyors];
+        this.tokenChanged = new Condition[numConveyors];
+        for (int c = 0; c < numConveyors; c++) {
+            if (topology.userCount(c) > 2) {
+                throw new IllegalArgumentException("The token strategy needs every conveyor shared by at most two stations - conveyor C" + c
+                + " is used by " + topology.userCount(c));
+            }
+            holder[c] = topology.userCount(c) == 0 ? -1 : topology.user(c, 0); // users are listed by ascending station ID
+            dirty[c] = true;
+            tokenLock[c] = new ReentrantLock();
+            tokenChanged[c] = tokenLock[c].newCondition();
+        }
+    }
+
+    @Override
+    public void acquire(RoutingStation station) {
+        int stationID = station.getStationID();
+        ConveyorObj[] lockOrder = station.getLockOrder();
+
+        // Collect every token - a dirty token held from the last package group can be taken away while waiting
+        // for another one, so keep collecting until all are owned at the moment the station starts working
+        do {
+            for (ConveyorObj conveyor : lockOrder) {
+                collect(station, conveyor.getID());
+            }
+        } while (!startWork(stationID, lockOrder));
+
+        ConveyorObj[] conveyors = station.getConveyors();
+        for (int k = 0; k < conveyors.length; k++) {
+            conveyors[k].lockConveyorBlocking(stationID);
+            station.recordLocked(k);
+        }
+    }
+
+    // Method to wait until the station owns the token of a conveyor, taking it over when it is dirty and idle
+    private void collect(RoutingStation station, int conveyorID) {
+        int stationID = station.getStationID();
+        tokenLock[conveyorID].lock();
+        try {
+            boolean waited = false;
+            while (holder[conveyorID] != stationID) {
+                if (dirty[conveyorID] && !inUse[conveyorID]) {
+                    holder[conveyorID] = stationID;
+                    dirty[conveyorID] = false;
+                    requested[conveyorID] = false;
+                    break;
+                }
+                requested[conveyorID] = true;
+                waited = true;
+                tokenChanged[conveyorID].awaitUninterruptibly();
+            }
+            if (waited) {
+                station.recordFailedAttempt();
+            }
+        } finally {
+            tokenLock[conveyorID].unlock();
+        }
+    }
+
+    // Method to mark every token in use if the station still owns them all - token locks are taken in ID order
+    private boolean startWork(int stationID, ConveyorObj[] lockOrder) {
+        for (ConveyorObj conveyor : lockOrder) {
+            tokenLock[conveyor.getID()].lock();
+        }
+        try {
+            for (ConveyorObj conveyor : lockOrder) {
+                if (holder[conveyor.getID()] != stationID) {
+                    return false;
+                }
+            }
+            for (ConveyorObj conveyor : lockOrder) {
+                inUse[conveyor.getID()] = true;
+            }
+            return true;
+        } finally {
+            for (int i = lockOrder.length - 1; i >= 0; i--) {
+                tokenLock[lockOrder[i].getID()].unlock();
+            }
+        }
+    }
+
+    @Override
+    public void released(RoutingStation station) {
+        for (ConveyorObj conveyor : station.getLockOrder()) {
+            handOff(station.getStationID(), conveyor.getID());
+        }
+    }
+
+    // Method to give a used token to the neighbour if it asked for it, otherwise keep it dirty
+    private void handOff(int stationID, int conveyorID) {
+        tokenLock[conveyorID].lock();
+        try {
+            inUse[conveyorID] = false;
+            dirty[conveyorID] = true;
+            if (requested[conveyorID]) {
+                holder[conveyorID] = (topology.user(conveyorID, 0) == stationID) ? topology.user(conveyorID, 1) : topology.user(conveyorID, 0);
+                dirty[conveyorID] = false;
+                requested[conveyorID] = false;
+            }
+            tokenChanged[conveyorID].signalAll();
+        } finally {
+            tokenLock[conveyorID].unlock();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "token";
+    }
+}
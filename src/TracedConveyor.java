@@ -0,0 +1,35 @@
+package src;
+
+// Class for a conveyor whose locking goes through a SimTrace - wrapped around the real conveyor when a run is
+// recorded or replayed, so the acquisition strategies need no changes to be traced
+public class TracedConveyor extends ConveyorObj {
+    private final ConveyorObj conveyor;
+    private final SimTrace trace;
+
+    // Constructor method - the traced conveyor keeps the ID of the conveyor it wraps
+    public TracedConveyor(ConveyorObj conveyor, SimTrace trace) {
+        super(conveyor.getID());
+        this.conveyor = conveyor;
+        this.trace = trace;
+    }
+
+    @Override
+    public int getLockedBy() {
+        return conveyor.getLockedBy();
+    }
+
+    @Override
+    public boolean lockConveyor(int stationID) {
+        return trace.tryLock(conveyor, stationID);
+    }
+
+    @Override
+    public void lockConveyorBlocking(int stationID) {
+        trace.lock(conveyor, stationID);
+    }
+
+    @Override
+    public void unlockConveyor() {
+        trace.unlock(conveyor);
+    }
+}
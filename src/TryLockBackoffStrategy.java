@@ -0,0 +1,37 @@
+package src;
+
+// Strategy for the original acquisition loop: tryLock the conveyors one after the other, inputs first, and if one
+// of them is taken release the ones already held and back off before trying again (a random sleep unless --backoff
+// picks another policy). For a ring station that is the original tryLock of the input conveyor, then the output conveyor.
+public class TryLockBackoffStrategy implements ConveyorAcquisitionStrategy {
+
+    @Override
+    public void acquire(RoutingStation station) {
+        int stationID = station.getStationID();
+        ConveyorObj[] conveyors = station.getConveyors();
+
+        // Loop until every lock is acquired
+        int held = 0;
+        while (held < conveyors.length) {
+            if (conveyors[held].lockConveyor(stationID)) {
+                station.recordLocked(held);
+                held++;
+            } else if (held > 0) {
+                ConveyorObj taken = conveyors[held];
+                station.getLog().record(station.isInput(held) ? EventLog.INPUT_LOCK_FAILED : EventLog.OUTPUT_LOCK_FAILED, stationID, taken.getID(),
+                ((long) taken.getLockedBy() << 32) | (conveyors[0].getID() & 0xFFFFFFFFL));
+
+                while (held > 0) {
+                    station.unlockConveyor(--held);
+                }
+                station.recordFailedAttempt();
+                station.backOff(taken);
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "trylock";
+    }
+}
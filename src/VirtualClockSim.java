@@ -0,0 +1,256 @@
+package src;
+import java.io.*;
+import java.util.SplittableRandom;
+
+// Class for the discrete-event version of the simulation. The same facility of stations and conveyors is run on a
+// virtual clock by a single thread: instead of sleeping, a station schedules its next step on the event queue.
+// The timing rules follow RoutingStation - the station's service time (up to 1000 ms of uniform work by default)
+// while holding all of its conveyors, and up to 500 ms of sleep after failing to lock one of them. A station that
+// finds its first conveyor taken waits for it to be released, which is what the threaded station's tryLock loop
+// amounts to.
+// With checkpoints on, the run writes its state to a SimCheckpoint every given stretch of virtual time, tracking
+// which blocks of stations and conveyors changed in between. At each checkpoint it also starts drawing from a new
+// generator seeded from the old one and saves that seed. A resumed run switches generators at the same times,
+// whether or not it writes checkpoints itself, so it draws exactly what the original run drew.
+public class VirtualClockSim {
+    private static final int TRY_ACQUIRE = 0;
+    private static final int WORK_DONE = 1;
+    private static final int FREE = -1;
+
+    private final FacilityTopology topology;
+    private final int numStations;
+    private final int[] workload;
+    private final int[] conveyorOwner;
+    private final int[] firstWaiter; // per conveyor, the first station waiting for it (FREE if none)
+    private final int[] nextWaiter; // per station, the next station waiting for the same conveyor
+    private final long[] waitStart;
+    private final EventQueue events = new EventQueue();
+    private final SimulationStats stats;
+    private SplittableRandom random = new SplittableRandom();
+    private ServiceTimes services;
+    private final int maxSleepMillis;
+    private long now = 0;
+    private long steps = 0;
+    private PackageFlow packageFlow; // null unless the run moves real packages
+    private SimCheckpoint checkpoint; // null unless the run writes checkpoints
+    private long checkpointMillis = 0; // 0 unless the run writes checkpoints or was resumed from one
+    private boolean[] dirtyStations; // per block of stations, changed since the last checkpoint
+    private boolean[] dirtyConveyors;
+    private boolean resumed = false;
+
+    // Constructor method for the original ring - station i uses conveyor i as input and conveyor (i + 1) % n as output
+    public VirtualClockSim(int[] workload, int maxWorkMillis, int maxSleepMillis) {
+        this(FacilityTopology.ring(WorkloadSource.of(workload)), maxWorkMillis, maxSleepMillis);
+    }
+
+    // Constructor method for any facility topology
+    public VirtualClockSim(FacilityTopology topology, int maxWorkMillis, int maxSleepMillis) {
+        this.topology = topology;
+        this.services = ServiceTimes.uniform(ServiceTime.uniform(maxWorkMillis));
+        this.maxSleepMillis = maxSleepMillis;
+        this.numStations = topology.numStations();
+        this.workload = new int[numStations];
+        for (int i = 0; i < numStations; i++) {
+            workload[i] = topology.workload(i);
+        }
+        this.conveyorOwner = new int[topology.numConveyors()];
+        this.firstWaiter = new int[topology.numConveyors()];
+        this.nextWaiter = new int[numStations];
+        this.waitStart = new long[numStations];
+        this.stats = new SimulationStats(numStations);
+        stats.setConcurrencyBound(topology.concurrencyBound());
+        java.util.Arrays.fill(conveyorOwner, FREE);
+        java.util.Arrays.fill(firstWaiter, FREE);
+    }
+
+    // Method to make the run repeatable - the engine is single threaded, so the same seed always gives the same run
+    public void setSeed(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    // Method to give the stations other service times than the uniform one below maxWorkMillis
+    public void setServiceTimes(ServiceTimes services) {
+        this.services = services;
+    }
+
+    // Method to make the stations move real packages
+    public void setPackageFlow(PackageFlow packageFlow) {
+        this.packageFlow = packageFlow;
+    }
+
+    // Method to write a checkpoint every given number of virtual milliseconds - the first one holds every block
+    public void setCheckpoints(SimCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        this.checkpointMillis = checkpoint.everyMillis();
+        this.dirtyStations = new boolean[((numStations - 1) >> SimCheckpoint.BLOCK_SHIFT) + 1];
+        this.dirtyConveyors = new boolean[((topology.numConveyors() - 1) >> SimCheckpoint.BLOCK_SHIFT) + 1];
+        java.util.Arrays.fill(dirtyStations, true);
+        java.util.Arrays.fill(dirtyConveyors, true);
+    }
+
+    // Method to start the run from a checkpoint instead of the beginning - it goes on with the random numbers the
+    // original run went on with, unless setSeed is called afterwards
+    public void resume(SimCheckpoint from, int index) throws IOException {
+        from.check(topology, index);
+        from.restore(index, events, workload, nextWaiter, waitStart, stats, conveyorOwner, firstWaiter);
+        now = from.time(index);
+        steps = from.steps(index);
+        random = new SplittableRandom(from.seed(index));
+        if (checkpointMillis == 0) {
+            checkpointMillis = from.everyMillis();
+        }
+        resumed = true;
+    }
+
+    // Method to run every station until its workload is done and return the completion statistics
+    public SimulationStats run() {
+        if (!resumed) {
+            for (int i = 0; i < numStations; i++) {
+                if (workload[i] > 0) {
+                    schedule(0, i, TRY_ACQUIRE);
+                }
+            }
+        }
+        // A resumed run picks up the checkpoint times where the original run left off
+        long nextCheckpoint = checkpointMillis == 0 ? Long.MAX_VALUE
+        : resumed && !events.isEmpty() ? (events.peekTime() / checkpointMillis + 1) * checkpointMillis : checkpointMillis;
+
+        while (!events.isEmpty()) {
+            long time = events.peekTime();
+            if (time >= nextCheckpoint) {
+                checkpoint();
+                nextCheckpoint = (time / checkpointMillis + 1) * checkpointMillis;
+            }
+            now = time;
+            int event = events.peekEvent();
+            events.pop();
+            steps++;
+            int stationID = event >>> 1;
+            if (dirtyStations != null) {
+                dirtyStations[stationID >> SimCheckpoint.BLOCK_SHIFT] = true;
+            }
+            if ((event & 1) == TRY_ACQUIRE) {
+                tryAcquire(stationID);
+            } else {
+                finishWork(stationID);
+            }
+        }
+
+        stats.setElapsedTime(now);
+        return stats;
+    }
+
+    // Number of station events processed so far - finished work and attempts at the conveyors
+    public long getSteps() {
+        return steps;
+    }
+
+    // Method to switch to a new generator between two events and write the state with its seed, if checkpoints
+    // are written
+    private void checkpoint() {
+        long seed = random.nextLong();
+        random = new SplittableRandom(seed);
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            checkpoint.append(now, steps, seed, events, workload, nextWaiter, waitStart, stats, dirtyStations, conveyorOwner, firstWaiter,
+            dirtyConveyors);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Method to mark a conveyor's block as changed since the last checkpoint
+    private void touch(int conveyorID) {
+        if (dirtyConveyors != null) {
+            dirtyConveyors[conveyorID >> SimCheckpoint.BLOCK_SHIFT] = true;
+        }
+    }
+
+    private void schedule(long time, int stationID, int type) {
+        events.push(time, (stationID << 1) | type);
+    }
+
+    private long randomTime(int maxMillis) {
+        return maxMillis > 0 ? random.nextInt(maxMillis) : 0;
+    }
+
+    // Method for a station to back off a random time before trying again - the virtual engine always uses the
+    // original random back-off, and the time counts as idle time in the stats as it does in the threaded mode
+    private void backOff(int stationID) {
+        long sleepMillis = randomTime(maxSleepMillis);
+        stats.recordIdle(stationID, sleepMillis * 1_000_000L);
+        schedule(now + sleepMillis, stationID, TRY_ACQUIRE);
+    }
+
+    // Method for a station to attempt all of its conveyors, in the same order as TryLockBackoffStrategy
+    private void tryAcquire(int stationID) {
+        int first = topology.conveyor(stationID, 0);
+        if (conveyorOwner[first] != FREE) {
+            nextWaiter[stationID] = firstWaiter[first]; // picked up again when the first conveyor is released
+            firstWaiter[first] = stationID;
+            touch(first);
+            return;
+        }
+
+        for (int k = 0; k < topology.conveyorCount(stationID); k++) {
+            int conveyorID = topology.conveyor(stationID, k);
+            if (conveyorOwner[conveyorID] == FREE) {
+                conveyorOwner[conveyorID] = stationID;
+                touch(conveyorID);
+            } else if (conveyorOwner[conveyorID] != stationID) {
+                releaseHeld(stationID, k);
+                stats.recordRetry(stationID);
+                backOff(stationID);
+                return;
+            }
+        }
+        stats.recordWait(stationID, (now - waitStart[stationID]) * 1_000_000);
+        int workMillis = services.of(stationID).sample(random);
+        stats.recordHold(stationID, workMillis * 1_000_000L);
+        schedule(now + workMillis, stationID, WORK_DONE);
+    }
+
+    // Method for a station to complete a package group and release all of its conveyors
+    private void finishWork(int stationID) {
+        boolean groupDone = packageFlow == null || packageFlow.moveGroup(stationID, now * 1_000_000);
+        if (groupDone) {
+            workload[stationID]--;
+            stats.recordGroup(stationID);
+            if (workload[stationID] == 0 && packageFlow != null) {
+                packageFlow.stationOffline(stationID, now * 1_000_000);
+            }
+        }
+        releaseHeld(stationID, topology.conveyorCount(stationID));
+
+        if (!groupDone) {
+            backOff(stationID); // as RoutingStation does
+        } else if (workload[stationID] > 0) {
+            waitStart[stationID] = now;
+            schedule(now, stationID, TRY_ACQUIRE);
+        } else {
+            stats.recordFinish(stationID, now);
+        }
+    }
+
+    // Method to release the first count conveyors of a station - a conveyor listed as both input and output is released once
+    private void releaseHeld(int stationID, int count) {
+        for (int k = 0; k < count; k++) {
+            int conveyorID = topology.conveyor(stationID, k);
+            if (conveyorOwner[conveyorID] == stationID) {
+                release(conveyorID);
+            }
+        }
+    }
+
+    // Method to free a conveyor and wake every station waiting for it
+    private void release(int conveyorID) {
+        conveyorOwner[conveyorID] = FREE;
+        touch(conveyorID);
+        for (int waiter = firstWaiter[conveyorID]; waiter != FREE; waiter = nextWaiter[waiter]) {
+            schedule(now, waiter, TRY_ACQUIRE);
+        }
+        firstWaiter[conveyorID] = FREE;
+    }
+}
@@ -0,0 +1,43 @@
+package src;
+
+// Interface for where the station count and per-station workloads of a run come from. Workloads are looked up
+// by station ID when the station is built, so a generated facility never has to be held in memory as a list.
+public interface WorkloadSource {
+    int numStations();
+
+    int workload(int stationID);
+
+    // Method to wrap workloads already parsed from a config file
+    static WorkloadSource of(int[] workloads) {
+        return new WorkloadSource() {
+            public int numStations() {
+                return workloads.length;
+            }
+
+            public int workload(int stationID) {
+                return workloads[stationID];
+            }
+        };
+    }
+
+    // Method to generate a facility of the given size - each station gets a workload between 1 and maxWorkload
+    // computed from its ID and the seed, so the same arguments always describe the same facility
+    static WorkloadSource generated(int numStations, int maxWorkload, long seed) {
+        if (numStations < 1 || maxWorkload < 1) {
+            throw new IllegalArgumentException("Generated facilities need at least 1 station and a workload of at least 1");
+        }
+        return new WorkloadSource() {
+            public int numStations() {
+                return numStations;
+            }
+
+            public int workload(int stationID) {
+                long z = seed + (stationID + 1) * 0x9E3779B97F4A7C15L; // SplitMix64 finalizer over the station ID
+                z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+                z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+                z = z ^ (z >>> 31);
+                return 1 + (int) Long.remainderUnsigned(z, maxWorkload);
+            }
+        };
+    }
+}
@@ -0,0 +1,146 @@
+package src;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+
+// Stress tests for the CAS-updated conveyor: one holder at a time, nested holds by the holding station, and no
+// station left parked once the conveyor is free
+public class AtomicConveyorTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 20_000;
+
+    @Test
+    public void tryLockReportsTheHolder() {
+        AtomicConveyor conveyor = new AtomicConveyor(0, AtomicConveyor.DEFAULT_SPINS);
+        assertEquals(ConveyorObj.FREE, conveyor.getLockedBy());
+        assertTrue(conveyor.lockConveyor(3));
+        assertFalse(conveyor.lockConveyor(4));
+        assertEquals(3, conveyor.getLockedBy());
+        conveyor.unlockConveyor();
+        assertEquals(ConveyorObj.FREE, conveyor.getLockedBy());
+        assertTrue(conveyor.lockConveyor(4));
+    }
+
+    @Test
+    public void holdsNestForTheHoldingStation() {
+        AtomicConveyor conveyor = new AtomicConveyor(0, 0);
+        assertTrue(conveyor.lockConveyor(5));
+        assertTrue(conveyor.lockConveyor(5));
+        conveyor.lockConveyorBlocking(5);
+        assertFalse(conveyor.lockConveyor(6));
+
+        conveyor.unlockConveyor();
+        conveyor.unlockConveyor();
+        assertEquals(5, conveyor.getLockedBy(), "the outermost hold is still there");
+        assertFalse(conveyor.lockConveyor(6));
+        conveyor.unlockConveyor();
+        assertEquals(ConveyorObj.FREE, conveyor.getLockedBy());
+        assertTrue(conveyor.lockConveyor(6));
+    }
+
+    @Test
+    public void spinningConveyorIsHeldByOneStationAtATime() throws InterruptedException {
+        stress(new AtomicConveyor(0, AtomicConveyor.DEFAULT_SPINS), false, true);
+    }
+
+    @Test
+    public void parkingConveyorIsHeldByOneStationAtATime() throws InterruptedException {
+        stress(new AtomicConveyor(0, 0), false, false);
+    }
+
+    @Test
+    public void nestedHoldsAreReleasedInFull() throws InterruptedException {
+        stress(new AtomicConveyor(0, 0), true, false);
+    }
+
+    @Test
+    public void releaseWakesParkedStations() throws InterruptedException {
+        AtomicConveyor conveyor = new AtomicConveyor(0, 0);
+        assertTrue(conveyor.lockConveyor(THREADS));
+        CountDownLatch done = new CountDownLatch(THREADS);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int stationID = t;
+            threads[t] = new Thread(() -> {
+                conveyor.lockConveyorBlocking(stationID);
+                conveyor.unlockConveyor();
+                done.countDown();
+            }, "station-" + t);
+            threads[t].setDaemon(true);
+            threads[t].start();
+        }
+        // Every station is parked before the conveyor is let go, so each one has to be woken by a release
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+        conveyor.unlockConveyor();
+        assertTrue(done.await(30, TimeUnit.SECONDS), done.getCount() + " station(s) left parked on a free conveyor");
+        assertEquals(ConveyorObj.FREE, conveyor.getLockedBy());
+    }
+
+    // Method to have THREADS stations take the conveyor ROUNDS times each, blocking or, with tryLocks, taking every
+    // third hold by trying until it gets the conveyor - every hold must see itself as the only holder, and every
+    // station must get through all of its rounds. Blocking stations only get the conveyor back through the wake-up
+    // of a release, so a lost one leaves a station parked and the test times out; trying stations do not need it.
+    private static void stress(AtomicConveyor conveyor, boolean nested, boolean tryLocks) throws InterruptedException {
+        AtomicInteger inside = new AtomicInteger();
+        long[] counter = new long[1]; // only touched while holding the conveyor
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int stationID = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int round = 0; round < ROUNDS; round++) {
+                        if (tryLocks && round % 3 == 0) {
+                            while (!conveyor.lockConveyor(stationID)) {
+                                Thread.yield();
+                            }
+                        } else {
+                            conveyor.lockConveyorBlocking(stationID);
+                        }
+                        if (nested) {
+                            assertTrue(conveyor.lockConveyor(stationID));
+                        }
+                        assertEquals(1, inside.incrementAndGet(), "two stations hold the conveyor");
+                        assertEquals(stationID, conveyor.getLockedBy());
+                        counter[0]++;
+                        if (round % 8 == 0) {
+                            LockSupport.parkNanos(20_000); // hold on a while so the others find the conveyor taken, even on one core
+                        }
+                        inside.decrementAndGet();
+                        if (nested) {
+                            conveyor.unlockConveyor();
+                            assertEquals(stationID, conveyor.getLockedBy());
+                        }
+                        conveyor.unlockConveyor();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }, "station-" + t);
+            threads[t].setDaemon(true);
+            threads[t].start();
+        }
+        start.countDown();
+        boolean finished = done.await(60, TimeUnit.SECONDS);
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(finished, "a station was left waiting on the conveyor");
+        assertEquals((long) THREADS * ROUNDS, counter[0]);
+        assertEquals(ConveyorObj.FREE, conveyor.getLockedBy());
+    }
+}
@@ -0,0 +1,63 @@
+package src;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Tests for the memory-mapped config parser, in both of its formats
+public class ConfigFileTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void textAndBinaryRoundTrip() throws IOException {
+        WorkloadSource source = WorkloadSource.generated(10_000, 50, 3);
+        for (String name : new String[] {"config.txt", "config.bin"}) {
+            String path = dir.resolve(name).toString();
+            ConfigFile.write(source, path);
+            int[] workloads = ConfigFile.read(path);
+            assertEquals(source.numStations(), workloads.length, name);
+            for (int i = 0; i < workloads.length; i++) {
+                assertEquals(source.workload(i), workloads[i], name + " station S" + i);
+            }
+        }
+    }
+
+    @Test
+    public void textSkipsBlankLinesAndTakesALastLineWithoutBreak() throws IOException {
+        assertArrayEquals(new int[] {4, 0, 6}, read("3\r\n\n4\n  \n0\n6"));
+    }
+
+    @Test
+    public void malformedTextIsReportedWithItsLine() throws IOException {
+        assertEquals(dir.resolve("bad.txt") + ":3: expected one number per line", message("2\n1\n2 3\n"));
+        assertEquals(dir.resolve("bad.txt") + ":2: a workload cannot be negative", message("2\n-1\n2\n"));
+        assertEquals(dir.resolve("bad.txt") + ":4: there are more workloads than the 2 stations given on the first line", message("2\n1\n2\n3\n"));
+        assertEquals(dir.resolve("bad.txt") + ": expected 3 workloads but found only 2", message("3\n1\n2\n"));
+        assertEquals(dir.resolve("bad.txt") + ":1: the number is too large", message("99999999999\n"));
+    }
+
+    @Test
+    public void binaryOfTheWrongSizeIsRefused() throws IOException {
+        Path path = dir.resolve("config.bin");
+        ConfigFile.write(WorkloadSource.generated(4, 5, 1), path.toString());
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, java.util.Arrays.copyOf(bytes, bytes.length - 2));
+        assertThrows(IllegalArgumentException.class, () -> ConfigFile.read(path.toString()));
+    }
+
+    private int[] read(String text) throws IOException {
+        Path path = dir.resolve("config.txt");
+        Files.writeString(path, text);
+        return ConfigFile.read(path.toString());
+    }
+
+    private String message(String text) throws IOException {
+        Path path = dir.resolve("bad.txt");
+        Files.writeString(path, text);
+        return assertThrows(IllegalArgumentException.class, () -> ConfigFile.read(path.toString())).getMessage();
+    }
+}
@@ -0,0 +1,79 @@
+package src;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+// Tests for the park back-off: a parked station is woken by the release, the wait is capped at --max-sleep-ms,
+// 0 makes it free, and an interrupt gets the station out
+public class ParkUntilReleaseBackoffTest {
+    private final ConveyorObj conveyor = new LockConveyor(0);
+    private final ParkUntilReleaseBackoff backoff = new ParkUntilReleaseBackoff(1);
+
+    private RoutingStation station(int maxSleepMillis) {
+        RoutingStation station = new RoutingStation(1, conveyor, conveyor, 1, new SimulationStats(2),
+        ConveyorAcquisitionStrategy.create("trylock", FacilityTopology.ring(WorkloadSource.of(new int[] {1}))));
+        station.setTiming(0, maxSleepMillis);
+        return station;
+    }
+
+    // Method to start a station backing off on the conveyor and wait until it is parked
+    private Thread parked(RoutingStation station, AtomicReference<Throwable> failure) throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            try {
+                backoff.backOff(station, conveyor);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(thread.isAlive(), "the station did not park");
+            Thread.sleep(1);
+        }
+        return thread;
+    }
+
+    @Test
+    public void releaseWakesTheParkedStation() throws InterruptedException {
+        assertTrue(conveyor.lockConveyor(0));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = parked(station(60_000), failure);
+        long start = System.nanoTime();
+        conveyor.unlockConveyor();
+        backoff.released(conveyor);
+        thread.join(10_000);
+        assertFalse(thread.isAlive(), "the release did not wake the station");
+        assertTrue(System.nanoTime() - start < 10_000_000_000L);
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void waitIsCappedAtMaxSleep() throws InterruptedException {
+        assertTrue(conveyor.lockConveyor(0));
+        long start = System.nanoTime();
+        backoff.backOff(station(50), conveyor);
+        assertTrue(System.nanoTime() - start >= 50_000_000L, "the station came back before --max-sleep-ms");
+        assertEquals(0, conveyor.getLockedBy());
+    }
+
+    @Test
+    public void zeroMaxSleepDoesNotWait() throws InterruptedException {
+        assertTrue(conveyor.lockConveyor(0));
+        long start = System.nanoTime();
+        backoff.backOff(station(0), conveyor);
+        assertTrue(System.nanoTime() - start < 1_000_000_000L, "--max-sleep-ms=0 waited");
+    }
+
+    @Test
+    public void interruptGetsTheStationOut() throws InterruptedException {
+        assertTrue(conveyor.lockConveyor(0));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = parked(station(60_000), failure);
+        thread.interrupt();
+        thread.join(10_000);
+        assertFalse(thread.isAlive());
+        assertTrue(failure.get() instanceof InterruptedException, "expected an InterruptedException, got " + failure.get());
+    }
+}
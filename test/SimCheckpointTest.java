@@ -0,0 +1,105 @@
+package src;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Round trips of the virtual-run checkpoints: a run resumed from any of its checkpoints has to end exactly as the
+// uninterrupted run did
+public class SimCheckpointTest {
+    private static final int STATIONS = 300; // several blocks of stations and conveyors
+    private static final long EVERY_MILLIS = 100;
+
+    @TempDir
+    Path dir;
+
+    private static FacilityTopology facility() {
+        return FacilityTopology.ring(WorkloadSource.generated(STATIONS, 12, 5));
+    }
+
+    private static VirtualClockSim sim(FacilityTopology topology) {
+        return new VirtualClockSim(topology, 200, 100);
+    }
+
+    @Test
+    public void resumeFromEveryCheckpointMatchesTheUninterruptedRun() throws IOException {
+        FacilityTopology topology = facility();
+        String path = dir.resolve("run.ckpt").toString();
+        SimCheckpoint checkpoint = SimCheckpoint.create(path, topology, EVERY_MILLIS);
+        VirtualClockSim original = sim(topology);
+        original.setSeed(42);
+        original.setCheckpoints(checkpoint);
+        SimulationStats expected = original.run();
+        checkpoint.close();
+
+        SimCheckpoint from = SimCheckpoint.open(path);
+        try {
+            assertTrue(from.count() >= 3, "the run is long enough for a few checkpoints, got " + from.count());
+            for (int index = 0; index < from.count(); index++) {
+                VirtualClockSim resumed = sim(topology);
+                resumed.resume(from, index);
+                assertSameRun(expected, original.getSteps(), resumed.run(), resumed.getSteps(), "checkpoint " + index);
+            }
+        } finally {
+            from.close();
+        }
+    }
+
+    @Test
+    public void resumedRunWritingCheckpointsStillMatches() throws IOException {
+        FacilityTopology topology = facility();
+        String path = dir.resolve("run.ckpt").toString();
+        SimCheckpoint checkpoint = SimCheckpoint.create(path, topology, EVERY_MILLIS);
+        VirtualClockSim original = sim(topology);
+        original.setSeed(7);
+        original.setCheckpoints(checkpoint);
+        SimulationStats expected = original.run();
+        checkpoint.close();
+
+        SimCheckpoint from = SimCheckpoint.open(path);
+        SimCheckpoint again = SimCheckpoint.create(dir.resolve("again.ckpt").toString(), topology, EVERY_MILLIS);
+        try {
+            VirtualClockSim resumed = sim(topology);
+            resumed.setCheckpoints(again);
+            resumed.resume(from, from.count() / 2);
+            assertSameRun(expected, original.getSteps(), resumed.run(), resumed.getSteps(), "checkpoint " + from.count() / 2);
+        } finally {
+            from.close();
+            again.close();
+        }
+    }
+
+    @Test
+    public void checkpointOfAnotherFacilityIsRefused() throws IOException {
+        String path = dir.resolve("run.ckpt").toString();
+        SimCheckpoint checkpoint = SimCheckpoint.create(path, facility(), EVERY_MILLIS);
+        VirtualClockSim original = sim(facility());
+        original.setCheckpoints(checkpoint);
+        original.run();
+        checkpoint.close();
+
+        SimCheckpoint from = SimCheckpoint.open(path);
+        try {
+            FacilityTopology other = FacilityTopology.ring(WorkloadSource.generated(STATIONS + 1, 12, 5));
+            assertThrows(IllegalArgumentException.class, () -> sim(other).resume(from, 0));
+        } finally {
+            from.close();
+        }
+    }
+
+    private static void assertSameRun(SimulationStats expected, long expectedSteps, SimulationStats actual, long actualSteps, String from) {
+        assertEquals(expected.getElapsedTime(), actual.getElapsedTime(), "elapsed time resumed from " + from);
+        assertEquals(expectedSteps, actualSteps, "steps resumed from " + from);
+        for (int s = 0; s < STATIONS; s++) {
+            String station = "station S" + s + " resumed from " + from;
+            assertEquals(expected.getCompletedGroups(s), actual.getCompletedGroups(s), station);
+            assertEquals(expected.getRetries(s), actual.getRetries(s), station);
+            assertEquals(expected.getFinishTime(s), actual.getFinishTime(s), station);
+            assertEquals(expected.getMaxWaitNanos(s), actual.getMaxWaitNanos(s), station);
+            assertEquals(expected.getIdleNanos(s), actual.getIdleNanos(s), station);
+            assertEquals(expected.getHoldNanos(s), actual.getHoldNanos(s), station);
+        }
+    }
+}
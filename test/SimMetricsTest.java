@@ -0,0 +1,53 @@
+package src;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Locale;
+import org.junit.jupiter.api.Test;
+
+// Tests for the live metrics: every station's counters are kept apart, and the totals read while stations record
+// never go backwards and add up once they are done
+public class SimMetricsTest {
+    private static final int STATIONS = 8;
+    private static final int ROUNDS = 200_000;
+
+    @Test
+    public void countersAddUpWhileBeingRead() throws InterruptedException {
+        FacilityTopology topology = FacilityTopology.ring(WorkloadSource.generated(STATIONS, 1, 1));
+        SimMetrics metrics = new SimMetrics(topology, new SimulationStats(STATIONS));
+        Thread[] threads = new Thread[STATIONS];
+        for (int t = 0; t < STATIONS; t++) {
+            int stationID = t;
+            threads[t] = new Thread(() -> {
+                for (int round = 0; round < ROUNDS; round++) {
+                    metrics.recordAcquired(stationID, 2);
+                    metrics.recordReleased(stationID, 3);
+                    if (round % 2 == 0) {
+                        metrics.recordFailedAttempt(stationID);
+                        metrics.recordBackoff(stationID);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        long last = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+            long acquisitions = metrics.getAcquisitions();
+            assertTrue(acquisitions >= last, "the total went back from " + last + " to " + acquisitions);
+            last = acquisitions;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals((long) STATIONS * ROUNDS, metrics.getAcquisitions());
+        assertEquals((long) STATIONS * ROUNDS / 2, metrics.getFailedAttempts());
+        assertEquals((long) STATIONS * ROUNDS / 2, metrics.getBackoffs());
+        assertEquals("Station S3: " + ROUNDS + " acquisitions, " + ROUNDS / 2 + " failed attempts, " + ROUNDS / 2 + " back-offs, "
+        + String.format(Locale.ROOT, "%.1f ms waiting, %.1f ms holding", ROUNDS * 2 / 1e6, ROUNDS * 3 / 1e6) + ", 0 groups completed", metrics.describeStation(3));
+    }
+}